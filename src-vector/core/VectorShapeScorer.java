@@ -0,0 +1,55 @@
+package core;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ShapeScorer} on the JDK Vector API: one lane per shape class.
+ *
+ * The table index of every row byte of every class is expanded once into
+ * rowIndices (row-major). Scoring a block is then eight gathers from the row
+ * tables and seven adds per vector of classes; the classes left over after
+ * the last whole vector are scored like the scalar scorer does.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and to run, which is
+ * why it lives outside src and is only loaded by name from
+ * {@link ShapeScorer#create}.
+ */
+final class VectorShapeScorer extends ShapeScorer {
+    // 256 bit, not SPECIES_PREFERRED: 512 bit int gathers crash C2 code on JDK 17 with AVX-512
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_256;
+
+    private final int[] rowIndices;
+
+    VectorShapeScorer(long[] shapes) {
+        super(shapes);
+        rowIndices = new int[8 * shapes.length];
+        for (int row = 0; row < 8; row++) {
+            for (int c = 0; c < shapes.length; c++) {
+                rowIndices[row * shapes.length + c] = row * 256 + (int) ((shapes[c] >>> (row * 8)) & 0xFF);
+            }
+        }
+    }
+
+    @Override
+    void score(int[] rowSums, int[] sums) {
+        int lanes = SPECIES.length();
+        int classCount = shapes.length;
+        int vectorEnd = SPECIES.loopBound(shapes.length);
+        for (int c = 0; c < vectorEnd; c += lanes) {
+            IntVector s = IntVector.fromArray(SPECIES, rowSums, 0, rowIndices, c);
+            for (int row = 1; row < 8; row++) {
+                s = s.add(IntVector.fromArray(SPECIES, rowSums, 0, rowIndices, row * classCount + c));
+            }
+            s.intoArray(sums, c);
+        }
+        for (int c = vectorEnd; c < shapes.length; c++) {
+            sums[c] = scoreShape(rowSums, shapes[c]);
+        }
+    }
+
+    @Override
+    String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
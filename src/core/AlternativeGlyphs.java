@@ -0,0 +1,118 @@
+package core;
+
+import ui.ControlPanel;
+
+/**
+ * Ranked alternative glyphs per cell, for cycling with "flip glyph".
+ *
+ * A ranking holds the solver's result for the block, then the best pictures
+ * (glyph with foreground and background colour, see
+ * {@link BitmaskMatcher#rankAlternatives}) in ascending error. It only
+ * depends on the source pixels, the glyph set and the solver settings, so it
+ * is computed on the first request for a cell and kept while the grid and
+ * the settings stay the same. Every press then moves to the entry after the current glyph and
+ * wraps around to the best one at the end.
+ */
+final class AlternativeGlyphs {
+    final ResultGlyph[][] grid;
+    final int size;
+    private final int width;
+    private final Ranking[] rankings;
+
+    // Solver settings the first entries were solved with
+    private final MultiThreadSolver.ApproxAlgorithm approxAlgorithm = MultiThreadSolver.approxAlgorithm;
+    private final int shapeCandidates = MultiThreadSolver.shapeCandidates;
+    private final boolean usePreference = ControlPanel.usePreference;
+    private final ControlPanel.AlgoPreference algoPreference = ControlPanel.algoPreference;
+    private final double deltaThreshold = deltaThreshold();
+
+    AlternativeGlyphs(ResultGlyph[][] grid, int size) {
+        this.grid = grid;
+        this.size = size;
+        this.width = grid.length > 0 ? grid[0].length : 0;
+        this.rankings = new Ranking[grid.length * width];
+    }
+
+    /**
+     * True while the solver settings are the ones the rankings were made with
+     */
+    boolean isCurrent() {
+        return approxAlgorithm == MultiThreadSolver.approxAlgorithm
+                && shapeCandidates == MultiThreadSolver.shapeCandidates
+                && usePreference == ControlPanel.usePreference && algoPreference == ControlPanel.algoPreference
+                && Double.compare(deltaThreshold, deltaThreshold()) == 0;
+    }
+
+    private static double deltaThreshold() {
+        return ControlPanel.thresholdApplies() ? ControlPanel.algoDeltaThreshold : 0;
+    }
+
+    /**
+     * Ranking of a cell, null if not computed yet
+     */
+    Ranking get(int gridX, int gridY) {
+        return rankings[gridY * width + gridX];
+    }
+
+    void put(int gridX, int gridY, Ranking ranking) {
+        rankings[gridY * width + gridX] = ranking;
+    }
+
+    /**
+     * Alternatives of one cell, best first
+     */
+    static final class Ranking {
+        final ResultGlyph[] glyphs;
+        final int[] errors;
+
+        Ranking(ResultGlyph[] glyphs, int[] errors) {
+            this.glyphs = glyphs;
+            this.errors = errors;
+        }
+
+        /**
+         * Same ranking with first in front; an equal entry is dropped, else
+         * the last one, so the length stays the same
+         */
+        Ranking startingWith(ResultGlyph first, int error) {
+            int count = glyphs.length;
+            ResultGlyph[] newGlyphs = new ResultGlyph[Math.max(count, 1)];
+            int[] newErrors = new int[newGlyphs.length];
+            newGlyphs[0] = first;
+            newErrors[0] = error;
+            int size = 1;
+            for (int i = 0; i < count && size < newGlyphs.length; i++) {
+                if (!isSame(glyphs[i], first)) {
+                    newGlyphs[size] = glyphs[i];
+                    newErrors[size++] = errors[i];
+                }
+            }
+            return new Ranking(newGlyphs, newErrors);
+        }
+
+        /**
+         * Entry after the given glyph (same codepoint and colours), or the
+         * best entry that differs from it if it is not in the list; null if
+         * there is no other entry
+         */
+        ResultGlyph after(ResultGlyph current) {
+            int count = glyphs.length;
+            for (int i = 0; i < count; i++) {
+                if (isSame(glyphs[i], current)) {
+                    ResultGlyph next = glyphs[(i + 1) % count];
+                    return isSame(next, current) ? null : next;
+                }
+            }
+            for (ResultGlyph glyph : glyphs) {
+                if (!isSame(glyph, current)) {
+                    return glyph;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isSame(ResultGlyph a, ResultGlyph b) {
+            return a.codePoint == b.codePoint && a.fgIndex == b.fgIndex && a.bgIndex == b.bgIndex;
+        }
+    }
+}
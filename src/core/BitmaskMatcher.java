@@ -0,0 +1,383 @@
+package core;
+
+import processing.core.PApplet;
+import ui.ControlPanel;
+
+/**
+ * Approximate matcher that scores glyphs with bit operations instead of a
+ * per-pixel float loop.
+ *
+ * With the two dominant colours c1/c2 fixed, every pixel costs d1 if it is
+ * drawn with c1 and d2 if it is drawn with c2. For a glyph pattern P:
+ *
+ * <pre>
+ * errorA (fg c1, bg c2) = sum(d2) + S(P)
+ * errorB (fg c2, bg c1) = sum(d1) - S(P)
+ * S(P) = sum of (d1 - d2) over the set bits of P
+ * </pre>
+ *
+ * S(P) is read from eight per-row lookup tables (one entry per possible 8-bit
+ * row), built once per block, so each glyph costs eight table reads
+ * ({@link ShapeScorer}, vectorized over the classes where the JDK Vector API
+ * is available). All
+ * distances are the integer squared RGB distances of {@link ColorMath}.
+ *
+ * Glyphs are scored per shape class ({@link GlyphClasses}): an inverted glyph
+ * has S(~P) = sum(d1) - sum(d2) - S(P), i.e. its errors are errorB/errorA of
+ * the plain shape, so one table read covers every glyph of the class. Equal
+ * errors are decided by the tie-break rank, which with TABLE_ORDER picks the
+ * same glyph as the full per-pixel scan.
+ *
+ * With {@link MultiThreadSolver#shapeCandidates} set, only the classes
+ * nearest to the block binarised by colour ({@link ShapeIndex}) are scored.
+ */
+public class BitmaskMatcher {
+    private final PApplet app;
+    private final GlyphClasses glyphClasses;
+    private final ShapeScorer shapeScorer;
+    private final ShapeIndex shapeIndex;
+
+    public BitmaskMatcher(PApplet app, GlyphClasses glyphClasses, ShapeIndex shapeIndex) {
+        this.app = app;
+        this.glyphClasses = glyphClasses;
+        this.shapeIndex = shapeIndex;
+        long[] shapes = new long[glyphClasses.size()];
+        for (int c = 0; c < shapes.length; c++) {
+            shapes[c] = glyphClasses.getShape(c);
+        }
+        this.shapeScorer = ShapeScorer.create(shapes, MultiThreadSolver.vectorScoring);
+    }
+
+    /**
+     * Name of the S(P) implementation in use, for the log
+     */
+    public String getScorerName() {
+        return shapeScorer.getName();
+    }
+
+    /**
+     * Find an approximate match for a block using dominant colors
+     */
+    public ResultGlyph findApproximateMatch(int[] blockPixels) {
+        return findApproximateMatch(blockPixels, MatchScratch.get());
+    }
+
+    /**
+     * Same as findApproximateMatch(int[]), with the buffers of the calling thread
+     */
+    ResultGlyph findApproximateMatch(int[] blockPixels, MatchScratch scratch) {
+        int pixelCount = ProcessingCore.PIXEL_COUNT;
+        int avgAlpha = averageAlpha(blockPixels);
+
+        int[] dominantIndices = ColorPalette.findDominantPaletteColors(blockPixels, app, pixelCount,
+                scratch.paletteIndices, scratch.paletteCounts, scratch.dominant);
+        int color1Index = dominantIndices[0];
+        int color2Index = dominantIndices[1];
+
+        long mask = prepareBlock(blockPixels, color1Index, color2Index, scratch);
+        int base1 = scratch.colorCosts[0];
+        int base2 = scratch.colorCosts[1];
+        int[] rowSums = scratch.rowSums;
+
+        // Classes to score: all of them (S of every class in one pass), or only
+        // the ones closest to the mask
+        int classCount = glyphClasses.size();
+        int candidateCount = classCount;
+        int[] candidates = null;
+        int[] shapeSums = null;
+        int k = MultiThreadSolver.shapeCandidates;
+        if (k > 0 && k < classCount) {
+            scratch.ensureCandidates(k, classCount);
+            candidates = scratch.candidateClasses;
+            candidateCount = shapeIndex.nearest(mask, k, candidates, scratch.candidateDistances,
+                    scratch.indexStack);
+        } else {
+            if (scratch.shapeSums.length < classCount) {
+                scratch.shapeSums = new int[classCount];
+            }
+            shapeSums = scratch.shapeSums;
+            shapeScorer.score(rowSums, shapeSums);
+        }
+
+        // Record of the scored classes for re-deciding the cell later
+        int[] record = scratch.recording ? scratch.decisionRecord : null;
+        int recordSize = scratch.recordCandidates;
+        if (record != null) {
+            DecisionRecords.begin(record, color1Index, color2Index, avgAlpha);
+        }
+
+        Decision decision = scratch.decision.begin(glyphClasses, color1Index, color2Index);
+        for (int i = 0; i < candidateCount; i++) {
+            int c = candidates == null ? i : candidates[i];
+            int s = candidates == null ? shapeSums[c] : ShapeScorer.scoreShape(rowSums, glyphClasses.getShape(c));
+            long errorA = base2 + s;
+            long errorB = base1 - s;
+            if (record != null) {
+                DecisionRecords.offer(record, recordSize, c, (int) errorA, (int) errorB);
+            }
+            decision.offer(c, errorA, errorB);
+        }
+        if (record != null) {
+            DecisionRecords.finish(record, recordSize, candidateCount);
+        }
+
+        return decision.result(avgAlpha);
+    }
+
+    /**
+     * Ranking of the alternatives for a block: every shape class gives two
+     * pictures with the dominant colours c1/c2 (shape in c1 on c2 and in c2 on
+     * c1, each drawn by the plain or the inverted glyph, whichever ranks
+     * better). Returns the best count of them in ascending error, equal errors
+     * in tie-break order like the solver. Preferences and shapeCandidates do
+     * not apply, all classes are scored.
+     */
+    AlternativeGlyphs.Ranking rankAlternatives(int[] blockPixels, int count, MatchScratch scratch) {
+        int pixelCount = ProcessingCore.PIXEL_COUNT;
+        int avgAlpha = averageAlpha(blockPixels);
+        int[] dominantIndices = ColorPalette.findDominantPaletteColors(blockPixels, app, pixelCount,
+                scratch.paletteIndices, scratch.paletteCounts, scratch.dominant);
+        int color1Index = dominantIndices[0];
+        int color2Index = dominantIndices[1];
+
+        prepareBlock(blockPixels, color1Index, color2Index, scratch);
+        int base1 = scratch.colorCosts[0];
+        int base2 = scratch.colorCosts[1];
+        int classCount = glyphClasses.size();
+        if (scratch.shapeSums.length < classCount) {
+            scratch.shapeSums = new int[classCount];
+        }
+        int[] shapeSums = scratch.shapeSums;
+        shapeScorer.score(scratch.rowSums, shapeSums);
+
+        // Best count pictures, sorted by error << 32 | tie-break key, with the
+        // class and picture (c << 1 | swapped) of every entry
+        long[] keys = new long[count];
+        int[] pictures = new int[count];
+        int size = 0;
+        for (int c = 0; c < classCount; c++) {
+            long plainKey = glyphClasses.getPlainRank(c) * 2L;
+            long invertedKey = glyphClasses.getInvertedRank(c) * 2L;
+            long keyA = (long) (base2 + shapeSums[c]) << 32 | Math.min(plainKey, invertedKey + 1);
+            long keyB = (long) (base1 - shapeSums[c]) << 32 | Math.min(plainKey + 1, invertedKey);
+            size = insert(keys, pictures, size, keyA, c << 1);
+            size = insert(keys, pictures, size, keyB, c << 1 | 1);
+        }
+
+        ResultGlyph[] glyphs = new ResultGlyph[size];
+        int[] errors = new int[size];
+        for (int i = 0; i < size; i++) {
+            int c = pictures[i] >> 1;
+            boolean swapped = (pictures[i] & 1) != 0;
+            // The tie-break key without its colour bit is the rank of the glyph drawing it
+            boolean plain = (int) keys[i] >>> 1 == glyphClasses.getPlainRank(c);
+            int codePoint = plain ? glyphClasses.getPlainCodePoint(c) : glyphClasses.getInvertedCodePoint(c);
+            boolean color1First = plain != swapped;
+            glyphs[i] = new ResultGlyph(codePoint, color1First ? color1Index : color2Index,
+                    color1First ? color2Index : color1Index, avgAlpha);
+            errors[i] = (int) (keys[i] >>> 32);
+        }
+        return new AlternativeGlyphs.Ranking(glyphs, errors);
+    }
+
+    /**
+     * Insert into the sorted keys if among the best keys.length, returns the new size
+     */
+    private static int insert(long[] keys, int[] pictures, int size, long key, int picture) {
+        if (size == keys.length && key >= keys[size - 1]) {
+            return size;
+        }
+        int position = size == keys.length ? size - 1 : size++;
+        while (position > 0 && keys[position - 1] > key) {
+            keys[position] = keys[position - 1];
+            pictures[position] = pictures[position - 1];
+            position--;
+        }
+        keys[position] = key;
+        pictures[position] = picture;
+        return size;
+    }
+
+    private static int averageAlpha(int[] blockPixels) {
+        int totalAlpha = 0;
+        for (int pixel : blockPixels) {
+            totalAlpha += (pixel >> 24) & 0xFF;
+        }
+        return totalAlpha / blockPixels.length;
+    }
+
+    /**
+     * Per-pixel costs of both colours into scratch.delta, their sums into
+     * scratch.colorCosts and the row tables into scratch.rowSums. Returns the
+     * pixels closer to color1.
+     */
+    private static long prepareBlock(int[] blockPixels, int color1Index, int color2Index, MatchScratch scratch) {
+        int base1 = 0;
+        int base2 = 0;
+        int[] delta = scratch.delta;
+        long mask = 0;
+        for (int i = 0; i < ProcessingCore.PIXEL_COUNT; i++) {
+            int d1 = ColorMath.distanceSqToPalette(blockPixels[i], color1Index);
+            int d2 = ColorMath.distanceSqToPalette(blockPixels[i], color2Index);
+            base1 += d1;
+            base2 += d2;
+            delta[i] = d1 - d2;
+            if (d1 < d2) {
+                mask |= 1L << i;
+            }
+        }
+        scratch.colorCosts[0] = base1;
+        scratch.colorCosts[1] = base2;
+
+        // Row tables: S of every possible 8-bit row, built from the row value
+        // with its lowest bit cleared (entry 0 of every table stays 0)
+        int[] rowSums = scratch.rowSums;
+        for (int row = 0; row < 8; row++) {
+            int tableOffset = row * 256;
+            for (int bits = 1; bits < 256; bits++) {
+                int x = Integer.numberOfTrailingZeros(bits);
+                rowSums[tableOffset + bits] = rowSums[tableOffset + (bits & (bits - 1))] + delta[row * 8 + x];
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Decide a cell again from its record with the current preference
+     * settings, without scoring. Returns null if the record cannot prove the
+     * result, then the cell has to be solved again.
+     */
+    ResultGlyph redecide(int[] records, int offset, MatchScratch scratch) {
+        if (records[offset + DecisionRecords.STATE] != DecisionRecords.APPROXIMATE) {
+            return null;
+        }
+        int colors = records[offset + DecisionRecords.COLORS];
+        Decision decision = scratch.decision.begin(glyphClasses, colors & 0xFF, (colors >> 8) & 0xFF);
+        int count = records[offset + DecisionRecords.COUNT];
+        for (int i = 0, entry = offset + DecisionRecords.HEADER; i < count; i++, entry += 3) {
+            decision.offer(records[entry], records[entry + 1], records[entry + 2]);
+        }
+        // Classes outside the record have no candidate below the bound, and none
+        // at all if the threshold excludes them
+        int bound = records[offset + DecisionRecords.BOUND];
+        if (bound != DecisionRecords.COMPLETE && decision.minError >= bound
+                && !decision.excludes(records[offset + DecisionRecords.OUTSIDE_DELTA])) {
+            return null;
+        }
+        return decision.result(colors >>> 16);
+    }
+
+    /**
+     * Lower error wins, equal errors go to the lower tie-break key
+     */
+    private static boolean isBetter(long error, long key, long minError, long bestKey) {
+        return error < minError || (error == minError && key < bestKey);
+    }
+
+    /**
+     * Best candidate of one block under the preference settings read at
+     * begin(); reused per thread through MatchScratch
+     */
+    static final class Decision {
+        private GlyphClasses glyphClasses;
+        private int color1Index, color2Index;
+        private boolean usePreference, useThreshold, brightnessApplies;
+        private double deltaThreshold;
+
+        private int bestCodePoint, bestFgIndex, bestBgIndex;
+        private long minError, bestKey;
+
+        Decision begin(GlyphClasses glyphClasses, int color1Index, int color2Index) {
+            this.glyphClasses = glyphClasses;
+            this.color1Index = color1Index;
+            this.color2Index = color2Index;
+
+            // Preference settings and the brightness order of the colors are the same
+            // for every glyph of this block
+            int brightness1 = ColorMath.paletteBrightness(color1Index);
+            int brightness2 = ColorMath.paletteBrightness(color2Index);
+            usePreference = ControlPanel.usePreference;
+            useThreshold = ControlPanel.algoPreference == ControlPanel.AlgoPreference.Threshold_Light ||
+                    ControlPanel.algoPreference == ControlPanel.AlgoPreference.Threshold_Dark;
+            boolean preferBrightAsForeground = ControlPanel.algoPreference == ControlPanel.AlgoPreference.Light ||
+                    ControlPanel.algoPreference == ControlPanel.AlgoPreference.Threshold_Light;
+            deltaThreshold = ControlPanel.algoDeltaThreshold;
+            brightnessApplies = true;
+            if (usePreference) {
+                brightnessApplies = brightness1 > brightness2 ? preferBrightAsForeground : !preferBrightAsForeground;
+            }
+
+            bestCodePoint = 0;
+            bestFgIndex = color1Index;
+            bestBgIndex = color2Index;
+            minError = Long.MAX_VALUE;
+            bestKey = Long.MAX_VALUE;
+            return this;
+        }
+
+        /**
+         * Consider the glyphs of class c with its errors for both color orders
+         */
+        void offer(int c, long errorA, long errorB) {
+            // Same decision rules as ProcessingCore.findApproximateMatch
+            boolean takeA;
+            boolean takeB;
+            if (usePreference && !useThreshold) {
+                takeA = brightnessApplies;
+                takeB = !brightnessApplies;
+            } else if (usePreference) {
+                takeA = takeB = brightnessApplies && Math.abs(errorA - errorB) < deltaThreshold;
+            } else {
+                takeA = takeB = true;
+            }
+            if (!takeA && !takeB) {
+                return;
+            }
+
+            // Candidates of the class: plain glyph with both color orders, and the
+            // inverted glyph, which has the errors of the plain glyph swapped
+            long plainKey = glyphClasses.getPlainRank(c) * 2L;
+            long invertedKey = glyphClasses.getInvertedRank(c) * 2L;
+            boolean hasInverted = glyphClasses.getInvertedCodePoint(c) >= 0;
+            if (takeA && isBetter(errorA, plainKey, minError, bestKey)) {
+                minError = errorA;
+                bestKey = plainKey;
+                bestCodePoint = glyphClasses.getPlainCodePoint(c);
+                bestFgIndex = color1Index;
+                bestBgIndex = color2Index;
+            }
+            if (takeB && isBetter(errorB, plainKey + 1, minError, bestKey)) {
+                minError = errorB;
+                bestKey = plainKey + 1;
+                bestCodePoint = glyphClasses.getPlainCodePoint(c);
+                bestFgIndex = color2Index;
+                bestBgIndex = color1Index;
+            }
+            if (hasInverted && takeA && isBetter(errorB, invertedKey, minError, bestKey)) {
+                minError = errorB;
+                bestKey = invertedKey;
+                bestCodePoint = glyphClasses.getInvertedCodePoint(c);
+                bestFgIndex = color1Index;
+                bestBgIndex = color2Index;
+            }
+            if (hasInverted && takeB && isBetter(errorA, invertedKey + 1, minError, bestKey)) {
+                minError = errorA;
+                bestKey = invertedKey + 1;
+                bestCodePoint = glyphClasses.getInvertedCodePoint(c);
+                bestFgIndex = color2Index;
+                bestBgIndex = color1Index;
+            }
+        }
+
+        /**
+         * True if no class with an error difference of at least delta can be taken
+         */
+        boolean excludes(int delta) {
+            return usePreference && useThreshold && (!brightnessApplies || deltaThreshold <= delta);
+        }
+
+        ResultGlyph result(int avgAlpha) {
+            return new ResultGlyph(bestCodePoint, bestFgIndex, bestBgIndex, avgAlpha);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package core;
+
+/**
+ * Integer colour math for the matchers, independent of any PApplet.
+ *
+ * Channels are taken straight from the packed ARGB int and distances are
+ * integer squared RGB distances. These equal the float values computed
+ * through PApplet.red()/green()/blue() in the default colour mode (whole
+ * numbers far below 2^24), so results do not change. The palette is split
+ * once into short[] channel arrays and a brightness table, so a matcher
+ * working with palette indices only reads arrays.
+ */
+public final class ColorMath {
+    private static short[] paletteRed = new short[0];
+    private static short[] paletteGreen = new short[0];
+    private static short[] paletteBlue = new short[0];
+    private static int[] paletteBrightness = new int[0];
+
+    private ColorMath() {
+    }
+
+    /**
+     * Split the palette into channel arrays (called by ColorPalette)
+     */
+    static void setPalette(int[] colors) {
+        short[] r = new short[colors.length];
+        short[] g = new short[colors.length];
+        short[] b = new short[colors.length];
+        int[] brightness = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            r[i] = (short) red(colors[i]);
+            g[i] = (short) green(colors[i]);
+            b[i] = (short) blue(colors[i]);
+            brightness[i] = (int) brightness(colors[i]);
+        }
+        paletteRed = r;
+        paletteGreen = g;
+        paletteBlue = b;
+        paletteBrightness = brightness;
+    }
+
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    /**
+     * Squared RGB distance of two colours, alpha is ignored
+     */
+    public static int distanceSq(int colorA, int colorB) {
+        int dr = red(colorA) - red(colorB);
+        int dg = green(colorA) - green(colorB);
+        int db = blue(colorA) - blue(colorB);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    /**
+     * Squared RGB distance of a colour to a palette entry
+     */
+    public static int distanceSqToPalette(int color, int paletteIndex) {
+        int dr = red(color) - paletteRed[paletteIndex];
+        int dg = green(color) - paletteGreen[paletteIndex];
+        int db = blue(color) - paletteBlue[paletteIndex];
+        return dr * dr + dg * dg + db * db;
+    }
+
+    /**
+     * Sum of the squared RGB distances of two pixel blocks of equal length
+     */
+    public static long blockDistanceSq(int[] blockA, int[] blockB) {
+        long total = 0;
+        for (int i = 0; i < blockA.length; i++) {
+            total += distanceSq(blockA[i], blockB[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Perceived brightness (0.299 R + 0.587 G + 0.114 B), 0..255
+     */
+    public static float brightness(int color) {
+        return 0.299f * red(color) + 0.587f * green(color) + 0.114f * blue(color);
+    }
+
+    /**
+     * Perceived brightness of a palette entry, truncated like (int) brightness()
+     */
+    public static int paletteBrightness(int paletteIndex) {
+        return paletteBrightness[paletteIndex];
+    }
+
+    public static int paletteRed(int paletteIndex) {
+        return paletteRed[paletteIndex];
+    }
+
+    public static int paletteGreen(int paletteIndex) {
+        return paletteGreen[paletteIndex];
+    }
+
+    public static int paletteBlue(int paletteIndex) {
+        return paletteBlue[paletteIndex];
+    }
+}
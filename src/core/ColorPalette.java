@@ -9,6 +9,7 @@ import processing.core.PApplet;
 public class ColorPalette {
     private static final int PALETTE_SIZE = 256;
     private static int[] colors;
+    private static PaletteQuantizer quantizer;
     private PApplet p;
 
     public ColorPalette(PApplet app) {
@@ -16,6 +17,8 @@ public class ColorPalette {
         colors = new int[PALETTE_SIZE];
         // setupXterm256Palette();
         setupPalette(app);
+        ColorMath.setPalette(colors);
+        quantizer = new PaletteQuantizer(colors);
     }
 
     /**
@@ -72,34 +75,7 @@ public class ColorPalette {
     }
 
     public static int findNearestColorIndex(int rgbColor, PApplet p) {
-        int bestIndex = 0;
-        double minDistSq = Double.MAX_VALUE;
-
-        float r1 = p.red(rgbColor);
-        float g1 = p.green(rgbColor);
-        float b1 = p.blue(rgbColor);
-
-        for (int i = 0; i < colors.length; i++) {
-            int palColor = colors[i];
-            float r2 = p.red(palColor);
-            float g2 = p.green(palColor);
-            float b2 = p.blue(palColor);
-
-            double distSq = (r1 - r2) * (r1 - r2) +
-                    (g1 - g2) * (g1 - g2) +
-                    (b1 - b2) * (b1 - b2);
-
-            if (distSq < minDistSq) {
-                minDistSq = distSq;
-                bestIndex = i;
-            }
-
-            if (minDistSq == 0) {
-                break; // Exact match found
-            }
-        }
-
-        return bestIndex;
+        return quantizer.nearest(rgbColor);
     }
 
     /**
@@ -113,29 +89,7 @@ public class ColorPalette {
         if (blockA.length != blockB.length) {
             return Double.MAX_VALUE;
         }
-
-        double totalError = 0;
-
-        for (int i = 0; i < blockA.length; i++) {
-            int colorA = blockA[i];
-            int colorB = blockB[i];
-
-            // Extrahiere die RGB-Komponenten
-            float r1 = p.red(colorA);
-            float g1 = p.green(colorA);
-            float b1 = p.blue(colorA);
-
-            float r2 = p.red(colorB);
-            float g2 = p.green(colorB);
-            float b2 = p.blue(colorB);
-
-            // Berechne die quadrierte Distanz
-            totalError += (r1 - r2) * (r1 - r2) +
-                    (g1 - g2) * (g1 - g2) +
-                    (b1 - b2) * (b1 - b2);
-        }
-
-        return totalError;
+        return ColorMath.blockDistanceSq(blockA, blockB);
     }
 
     /**
@@ -251,10 +205,18 @@ public class ColorPalette {
     }
 
     public static int[] findDominantPaletteColors(int[] blockPixels, PApplet p, int PIXEL_COUNT) {
-        int[] counts = new int[256];
+        return findDominantPaletteColors(blockPixels, p, PIXEL_COUNT, new int[PIXEL_COUNT], new int[256], new int[2]);
+    }
 
+    /**
+     * findDominantPaletteColors with caller owned buffers: indices (one per
+     * pixel), counts (256, all zero, left zero again) and result (2, returned)
+     */
+    static int[] findDominantPaletteColors(int[] blockPixels, PApplet p, int PIXEL_COUNT, int[] indices,
+            int[] counts, int[] result) {
         for (int i = 0; i < PIXEL_COUNT; i++) {
             int nearestIndex = ColorPalette.findNearestPaletteIndex(blockPixels[i], p);
+            indices[i] = nearestIndex;
             counts[nearestIndex]++;
         }
 
@@ -289,7 +251,14 @@ public class ColorPalette {
                 bestIndex2 = thirdBestIndex;
             }
         }
-        return new int[] { bestIndex1, bestIndex2 };
+
+        // Only the entries of the block's colours were touched
+        for (int i = 0; i < PIXEL_COUNT; i++) {
+            counts[indices[i]] = 0;
+        }
+        result[0] = bestIndex1;
+        result[1] = bestIndex2;
+        return result;
     }
 
     /**
@@ -298,7 +267,7 @@ public class ColorPalette {
      */
     static int findNearestPaletteIndex(int rgbColor, PApplet p) {
         // Extract alpha channel value
-        int alpha = (rgbColor >> 24) & 0xFF;
+        int alpha = ColorMath.alpha(rgbColor);
 
         // Vollständig transparente Pixel als Schwarz behandeln (xterm Index 0)
         if (alpha == 0) {
@@ -307,40 +276,13 @@ public class ColorPalette {
 
         // Wenn der Pixel schwarz oder nahezu schwarz und opak ist,
         // direkt opakes Schwarz zurückgeben (Index 0)
-        float r = p.red(rgbColor);
-        float g = p.green(rgbColor);
-        float b = p.blue(rgbColor);
-        if (r <= 5 && g <= 5 && b <= 5 && alpha > 200) {
+        if (ColorMath.red(rgbColor) <= 5 && ColorMath.green(rgbColor) <= 5 && ColorMath.blue(rgbColor) <= 5
+                && alpha > 200) {
             return 0; // In xterm ist 0 Schwarz
         }
 
-        // Für alle anderen Pixel den nächsten Farbindex in der Palette finden
-        int bestIndex = 0;
-        double minDistSq = Double.MAX_VALUE;
-
-        // Die xterm Palette durchsuchen (alle Indizes)
-        for (int i = 0; i < colors.length; i++) {
-            int palColor = colors[i];
-            float r2 = p.red(palColor);
-            float g2 = p.green(palColor);
-            float b2 = p.blue(palColor);
-
-            // Berechne die RGB-Distanz (ohne Alpha-Komponente)
-            double distSq = (r - r2) * (r - r2) +
-                    (g - g2) * (g - g2) +
-                    (b - b2) * (b - b2);
-
-            if (distSq < minDistSq) {
-                minDistSq = distSq;
-                bestIndex = i;
-            }
-
-            if (minDistSq == 0) {
-                break; // Exakter Match gefunden
-            }
-        }
-
-        return bestIndex;
+        // Für alle anderen Pixel den nächsten Farbindex aus der Lookup-Tabelle lesen
+        return quantizer.nearest(rgbColor);
     }
 
     /**
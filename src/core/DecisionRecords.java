@@ -0,0 +1,172 @@
+package core;
+
+/**
+ * Per-cell record of the bitmask matcher's scoring, so a change of the
+ * light/dark preference or the delta threshold can be decided again without
+ * scoring the glyphs.
+ *
+ * The preferences only choose among errorA/errorB of the shape classes; the
+ * dominant colours and the errors themselves do not depend on them. A record
+ * keeps the K classes with the lowest min(errorA, errorB) and the K-th of
+ * these values as bound: every class left out has no candidate below it. A
+ * re-decided winner below the bound is therefore the winner of a full solve;
+ * otherwise (or without record) the cell has to be solved again. For the
+ * threshold modes the record also keeps the smallest |errorA - errorB| of the
+ * classes left out: a threshold up to that value excludes all of them.
+ *
+ * All records of a grid live in one int array, one fixed-size slot per cell:
+ *
+ * <pre>
+ * [0] state  [1] color1 | color2 &lt;&lt; 8 | alpha &lt;&lt; 16  [2] count  [3] bound
+ * [4] smallest |errorA - errorB| left out
+ * then count x (class, errorA, errorB), a max-heap on min(errorA, errorB)
+ * </pre>
+ *
+ * Cells changed by hand (GlyphChangeCommand) are marked as edited and left
+ * alone by a preference change until they are solved again.
+ */
+final class DecisionRecords {
+    static final int NONE = 0; // not solved, tile cache hit or other algorithm
+    static final int EXACT = 1; // exact match, independent of the preferences
+    static final int APPROXIMATE = 2;
+
+    static final int STATE = 0;
+    static final int COLORS = 1;
+    static final int COUNT = 2;
+    static final int BOUND = 3;
+    static final int OUTSIDE_DELTA = 4;
+    static final int HEADER = 5;
+    // Bound of a record that holds every scored class
+    static final int COMPLETE = Integer.MAX_VALUE;
+
+    final ResultGlyph[][] grid;
+    final int candidates;
+    private final int width;
+    private final int stride;
+    private final int[] data;
+    private final boolean[] edited;
+
+    DecisionRecords(ResultGlyph[][] grid, int candidates) {
+        this.grid = grid;
+        this.candidates = candidates;
+        this.width = grid.length > 0 ? grid[0].length : 0;
+        this.stride = length(candidates);
+        this.data = new int[grid.length * width * stride];
+        this.edited = new boolean[grid.length * width];
+    }
+
+    /**
+     * Ints of one record with the given number of candidates
+     */
+    static int length(int candidates) {
+        return HEADER + 3 * candidates;
+    }
+
+    int[] data() {
+        return data;
+    }
+
+    int offset(int gridX, int gridY) {
+        return (gridY * width + gridX) * stride;
+    }
+
+    /**
+     * Copy a record (built in a MatchScratch) into the slot of a cell
+     */
+    void store(int gridX, int gridY, int[] record) {
+        System.arraycopy(record, 0, data, offset(gridX, gridY), stride);
+        edited[gridY * width + gridX] = false;
+    }
+
+    /**
+     * Mark a cell as changed by hand, until it is stored again
+     */
+    void markEdited(int gridX, int gridY) {
+        edited[gridY * width + gridX] = true;
+    }
+
+    boolean isEdited(int gridX, int gridY) {
+        return edited[gridY * width + gridX];
+    }
+
+    /**
+     * Start a record of an approximated block
+     */
+    static void begin(int[] record, int color1Index, int color2Index, int avgAlpha) {
+        record[STATE] = APPROXIMATE;
+        record[COLORS] = color1Index | color2Index << 8 | avgAlpha << 16;
+        record[COUNT] = 0;
+        record[OUTSIDE_DELTA] = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Offer a scored class to a record of at most k candidates
+     */
+    static void offer(int[] record, int k, int classIndex, int errorA, int errorB) {
+        int value = Math.min(errorA, errorB);
+        int count = record[COUNT];
+        if (count < k) {
+            // sift up
+            int position = count;
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (key(record, parent) >= value) {
+                    break;
+                }
+                copy(record, parent, position);
+                position = parent;
+            }
+            set(record, position, classIndex, errorA, errorB);
+            record[COUNT] = count + 1;
+        } else if (value >= key(record, 0)) {
+            leaveOut(record, errorA, errorB);
+        } else {
+            // replace the largest and sift down
+            int entry = HEADER;
+            leaveOut(record, record[entry + 1], record[entry + 2]);
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= count) {
+                    break;
+                }
+                if (child + 1 < count && key(record, child + 1) > key(record, child)) {
+                    child++;
+                }
+                if (key(record, child) <= value) {
+                    break;
+                }
+                copy(record, child, position);
+                position = child;
+            }
+            set(record, position, classIndex, errorA, errorB);
+        }
+    }
+
+    /**
+     * Close a record after scoredClasses classes were offered
+     */
+    static void finish(int[] record, int k, int scoredClasses) {
+        record[BOUND] = scoredClasses <= k ? COMPLETE : key(record, 0);
+    }
+
+    private static void leaveOut(int[] record, int errorA, int errorB) {
+        record[OUTSIDE_DELTA] = Math.min(record[OUTSIDE_DELTA], Math.abs(errorA - errorB));
+    }
+
+    private static int key(int[] record, int position) {
+        int entry = HEADER + 3 * position;
+        return Math.min(record[entry + 1], record[entry + 2]);
+    }
+
+    private static void copy(int[] record, int from, int to) {
+        System.arraycopy(record, HEADER + 3 * from, record, HEADER + 3 * to, 3);
+    }
+
+    private static void set(int[] record, int position, int classIndex, int errorA, int errorB) {
+        int entry = HEADER + 3 * position;
+        record[entry] = classIndex;
+        record[entry + 1] = errorA;
+        record[entry + 2] = errorB;
+    }
+}
@@ -0,0 +1,69 @@
+package core;
+
+/**
+ * Hash index over the glyph patterns for exact two-colour matching.
+ *
+ * Once a block is quantized to two palette indices its shape is a single
+ * 64-bit mask, so finding a glyph that reproduces it is one hash probe for the
+ * mask (first colour as foreground) and one for the inverted mask (second
+ * colour as foreground). When several glyphs share a pattern the one with
+ * the lowest tie-break rank ({@link GlyphClasses#rank}) wins; with TABLE_ORDER
+ * that is the first one in the glyph table, like in the old linear scan.
+ */
+public class ExactMatchIndex {
+    private final LongIntHashMap ordinalByPattern;
+    private final int[] codePoints;
+    private final int[] ranks;
+    private final int solidCodePoint;
+
+    public ExactMatchIndex(GlyphTable glyphTable, GlyphClasses.TieBreak tieBreak) {
+        ordinalByPattern = new LongIntHashMap(glyphTable.size());
+        codePoints = glyphTable.codePointArray();
+        ranks = new int[glyphTable.size()];
+
+        int solid = -1;
+        for (int ordinal = 0; ordinal < glyphTable.size(); ordinal++) {
+            long pattern = glyphTable.getPattern(ordinal);
+            ranks[ordinal] = GlyphClasses.rank(glyphTable, ordinal, tieBreak);
+            int current = ordinalByPattern.getOrDefault(pattern, -1);
+            if (current < 0 || ranks[ordinal] < ranks[current]) {
+                ordinalByPattern.put(pattern, ordinal);
+            }
+            if ((pattern == -1L || pattern == 0L) && (solid == -1 || ranks[ordinal] < ranks[solid])) {
+                solid = ordinal;
+            }
+        }
+        solidCodePoint = solid == -1 ? -1 : codePoints[solid];
+    }
+
+    /**
+     * Position (in the glyph table) of the preferred glyph with exactly this
+     * pattern, or -1 if no glyph has it
+     */
+    public int ordinalOf(long pattern) {
+        return ordinalByPattern.getOrDefault(pattern, -1);
+    }
+
+    public int getCodePoint(int ordinal) {
+        return codePoints[ordinal];
+    }
+
+    /**
+     * Tie-break rank of the glyph at this position, lower is preferred
+     */
+    public int getRank(int ordinal) {
+        return ranks[ordinal];
+    }
+
+    /**
+     * Codepoint of the preferred glyph that is completely filled or completely empty,
+     * or -1 if the font has none
+     */
+    public int getSolidCodePoint() {
+        return solidCodePoint;
+    }
+
+    public int size() {
+        return codePoints.length;
+    }
+}
@@ -0,0 +1,123 @@
+package core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-rasterized glyph masks per (pattern, scale), kept in an LRU cache.
+ *
+ * A mask holds one int per output pixel of a cell, -1 where the glyph bit is
+ * set and 0 elsewhere. Drawing a cell is then a masked copy,
+ * bg ^ ((fg ^ bg) &amp; mask), with the palette colours of the cell; no bit
+ * tests or per pixel fill calls. The cache is bounded by the total number of
+ * mask pixels, so large export scales evict earlier than the view scales.
+ */
+public class GlyphAtlas {
+    private final long maxPixels;
+    private long pixelCount;
+    private final LinkedHashMap<Key, int[]> masks = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * @param maxPixels total number of mask pixels kept
+     */
+    public GlyphAtlas(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Mask of the pattern at the scale, rasterized on first use
+     */
+    public synchronized int[] getMask(long pattern, int scale) {
+        Key key = new Key(pattern, scale);
+        int[] mask = masks.get(key);
+        if (mask == null) {
+            mask = rasterize(pattern, scale);
+            masks.put(key, mask);
+            pixelCount += mask.length;
+            evict();
+        }
+        return mask;
+    }
+
+    /**
+     * Draw a glyph with its top left corner at (left, top) into a pixel buffer
+     * of the given width
+     */
+    public void drawGlyph(int[] pixels, int stride, int left, int top, int scale, long pattern, int fgColor,
+            int bgColor) {
+        int[] mask = getMask(pattern, scale);
+        int cellWidth = ProcessingCore.GLYPH_WIDTH * scale;
+        int cellHeight = ProcessingCore.GLYPH_HEIGHT * scale;
+        int diff = fgColor ^ bgColor;
+        for (int line = 0, m = 0; line < cellHeight; line++) {
+            int offset = (top + line) * stride + left;
+            for (int x = 0; x < cellWidth; x++) {
+                pixels[offset + x] = bgColor ^ (diff & mask[m++]);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        masks.clear();
+        pixelCount = 0;
+    }
+
+    public synchronized int size() {
+        return masks.size();
+    }
+
+    private void evict() {
+        Iterator<int[]> eldest = masks.values().iterator();
+        // keep at least the newest mask, even if it alone exceeds the budget
+        while (pixelCount > maxPixels && masks.size() > 1) {
+            pixelCount -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private static int[] rasterize(long pattern, int scale) {
+        int cellWidth = ProcessingCore.GLYPH_WIDTH * scale;
+        int[] mask = new int[cellWidth * ProcessingCore.GLYPH_HEIGHT * scale];
+        for (int row = 0; row < ProcessingCore.GLYPH_HEIGHT; row++) {
+            int lineStart = row * scale * cellWidth;
+            for (int col = 0; col < ProcessingCore.GLYPH_WIDTH; col++) {
+                if (((pattern >>> (row * ProcessingCore.GLYPH_WIDTH + col)) & 1L) == 0) {
+                    continue;
+                }
+                for (int line = 0; line < scale; line++) {
+                    int offset = lineStart + line * cellWidth + col * scale;
+                    for (int x = 0; x < scale; x++) {
+                        mask[offset + x] = -1;
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static final class Key {
+        final long pattern;
+        final int scale;
+
+        Key(long pattern, int scale) {
+            this.pattern = pattern;
+            this.scale = scale;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = pattern * 0x9E3779B97F4A7C15L + scale;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return pattern == key.pattern && scale == key.scale;
+        }
+    }
+}
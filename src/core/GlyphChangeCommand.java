@@ -47,6 +47,9 @@ public class GlyphChangeCommand implements Command {
             processingCore.resultGrid[gridY][gridX] = new ResultGlyph(
                     newGlyph.codePoint, newGlyph.fgIndex, newGlyph.bgIndex, newGlyph.alpha);
 
+            processingCore.markEdited(gridX, gridY);
+            processingCore.invalidateCell(gridX, gridY);
+
             // Aktualisiere die angeklickte Glyphe, falls die gleiche Position betroffen ist
             if (processingCore.clickedGridX == gridX && processingCore.clickedGridY == gridY) {
                 processingCore.clickedGlyph = processingCore.resultGrid[gridY][gridX];
@@ -76,6 +79,9 @@ public class GlyphChangeCommand implements Command {
             processingCore.resultGrid[gridY][gridX] = new ResultGlyph(
                     oldGlyph.codePoint, oldGlyph.fgIndex, oldGlyph.bgIndex, oldGlyph.alpha);
 
+            processingCore.markEdited(gridX, gridY);
+            processingCore.invalidateCell(gridX, gridY);
+
             // Aktualisiere die angeklickte Glyphe, falls die gleiche Position betroffen ist
             if (processingCore.clickedGridX == gridX && processingCore.clickedGridY == gridY) {
                 processingCore.clickedGlyph = processingCore.resultGrid[gridY][gridX];
@@ -0,0 +1,128 @@
+package core;
+
+/**
+ * Glyphs of a {@link GlyphTable} grouped into shape equivalence classes.
+ *
+ * Many codepoints render to the same 64-bit pattern, and a glyph with pattern
+ * ~P gives the same picture as a glyph with pattern P with fg/bg swapped. A
+ * class holds one shape P and the preferred codepoint for P (plain) and for ~P
+ * (inverted, -1 if the font has none), so a matcher only scores each shape
+ * once.
+ *
+ * Which codepoint represents a class is decided by the {@link TieBreak}
+ * policy, which gives every glyph a rank. Matchers break equal errors by
+ * rank*2 (+1 for the swapped colour assignment); with {@link TieBreak#TABLE_ORDER}
+ * this is the same glyph the full scan over the table picks.
+ */
+public class GlyphClasses {
+    /**
+     * Preferred glyph among several that produce the same result
+     */
+    public enum TieBreak {
+        TABLE_ORDER, // first glyph in the pattern table (previous behaviour)
+        LOWEST_CODEPOINT, // lowest codepoint
+        ASCII_FIRST // printable ASCII first, then lowest codepoint
+    }
+
+    private final long[] shapes;
+    private final int[] plainCodePoints;
+    private final int[] plainRanks;
+    private final int[] invertedCodePoints;
+    private final int[] invertedRanks;
+
+    public GlyphClasses(GlyphTable glyphTable, TieBreak tieBreak) {
+        int glyphCount = glyphTable.size();
+
+        // Best ranked glyph per exact pattern
+        LongIntHashMap bestByPattern = new LongIntHashMap(glyphCount);
+        for (int i = 0; i < glyphCount; i++) {
+            long pattern = glyphTable.getPattern(i);
+            int current = bestByPattern.getOrDefault(pattern, -1);
+            if (current < 0 || rank(glyphTable, i, tieBreak) < rank(glyphTable, current, tieBreak)) {
+                bestByPattern.put(pattern, i);
+            }
+        }
+
+        // One class per pattern pair, in table order of its first glyph
+        int[] firstGlyphOf = new int[glyphCount];
+        LongIntHashMap classByPattern = new LongIntHashMap(glyphCount);
+        int classCount = 0;
+        for (int i = 0; i < glyphCount; i++) {
+            long pattern = glyphTable.getPattern(i);
+            if (!classByPattern.containsKey(pattern)) {
+                classByPattern.put(pattern, classCount);
+                classByPattern.put(~pattern, classCount);
+                firstGlyphOf[classCount++] = i;
+            }
+        }
+
+        shapes = new long[classCount];
+        plainCodePoints = new int[classCount];
+        plainRanks = new int[classCount];
+        invertedCodePoints = new int[classCount];
+        invertedRanks = new int[classCount];
+        for (int c = 0; c < classCount; c++) {
+            long pattern = glyphTable.getPattern(firstGlyphOf[c]);
+            int best = bestByPattern.getOrDefault(pattern, -1);
+            int bestInverted = bestByPattern.getOrDefault(~pattern, -1);
+
+            // The better ranked side is the plain shape, so plain always exists
+            if (bestInverted >= 0 && rank(glyphTable, bestInverted, tieBreak) < rank(glyphTable, best, tieBreak)) {
+                pattern = ~pattern;
+                int swap = best;
+                best = bestInverted;
+                bestInverted = swap;
+            }
+
+            shapes[c] = pattern;
+            plainCodePoints[c] = glyphTable.getCodePoint(best);
+            plainRanks[c] = rank(glyphTable, best, tieBreak);
+            invertedCodePoints[c] = bestInverted >= 0 ? glyphTable.getCodePoint(bestInverted) : -1;
+            invertedRanks[c] = bestInverted >= 0 ? rank(glyphTable, bestInverted, tieBreak) : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Rank of the glyph at the table position under the policy, lower is
+     * preferred
+     */
+    public static int rank(GlyphTable glyphTable, int index, TieBreak tieBreak) {
+        int codePoint = glyphTable.getCodePoint(index);
+        switch (tieBreak) {
+            case LOWEST_CODEPOINT:
+                return codePoint;
+            case ASCII_FIRST:
+                return codePoint >= 0x20 && codePoint < 0x7F ? codePoint : 0x200000 + codePoint;
+            case TABLE_ORDER:
+            default:
+                return index;
+        }
+    }
+
+    public int size() {
+        return shapes.length;
+    }
+
+    public long getShape(int classIndex) {
+        return shapes[classIndex];
+    }
+
+    public int getPlainCodePoint(int classIndex) {
+        return plainCodePoints[classIndex];
+    }
+
+    public int getPlainRank(int classIndex) {
+        return plainRanks[classIndex];
+    }
+
+    /**
+     * Codepoint whose pattern is the inverted shape, or -1 if there is none
+     */
+    public int getInvertedCodePoint(int classIndex) {
+        return invertedCodePoints[classIndex];
+    }
+
+    public int getInvertedRank(int classIndex) {
+        return invertedRanks[classIndex];
+    }
+}
@@ -14,6 +14,7 @@ public class GlyphManager {
     public static final int PIXEL_COUNT = GLYPH_WIDTH * GLYPH_HEIGHT;
 
     private Map<Integer, Long> glyphPatterns;
+    private GlyphTable glyphTable;
     private PApplet app;
     private String fontPath;
     private float fontSize;
@@ -37,6 +38,7 @@ public class GlyphManager {
             if (glyphPatterns.isEmpty()) {
                 throw new RuntimeException("Pattern generation resulted in an empty map.");
             }
+            glyphTable = new GlyphTable(glyphPatterns);
 
             // Print a test pattern for 'A'
             int testCodePoint = 'A';
@@ -57,37 +59,16 @@ public class GlyphManager {
      */
     public double calculateMatchError(long pattern, int fgIndex, int bgIndex, int[] originalBlockPixels,
             ColorPalette palette) {
-        double totalError = 0;
+        long totalError = 0;
         int fgColor = palette.getColor(fgIndex);
         int bgColor = palette.getColor(bgIndex);
 
-        // Extract RGB components
-        float fgR = app.red(fgColor);
-        float fgG = app.green(fgColor);
-        float fgB = app.blue(fgColor);
-        float bgR = app.red(bgColor);
-        float bgG = app.green(bgColor);
-        float bgB = app.blue(bgColor);
-
         // Calculate error for each pixel
         for (int i = 0; i < PIXEL_COUNT; i++) {
-            boolean pixelOn = ((pattern >> i) & 1L) == 1L;
-
             // Use foreground or background color based on pattern
-            float simR = pixelOn ? fgR : bgR;
-            float simG = pixelOn ? fgG : bgG;
-            float simB = pixelOn ? fgB : bgB;
-
-            // Get original pixel color
-            int originalColor = originalBlockPixels[i];
-            float origR = app.red(originalColor);
-            float origG = app.green(originalColor);
-            float origB = app.blue(originalColor);
-
+            int simColor = ((pattern >> i) & 1L) == 1L ? fgColor : bgColor;
             // Sum of squared differences per channel
-            totalError += (origR - simR) * (origR - simR) +
-                    (origG - simG) * (origG - simG) +
-                    (origB - simB) * (origB - simB);
+            totalError += ColorMath.distanceSq(originalBlockPixels[i], simColor);
         }
 
         return totalError;
@@ -121,14 +102,14 @@ public class GlyphManager {
      * Get a glyph pattern for a specific codepoint
      */
     public long getPattern(int codePoint) {
-        return glyphPatterns.getOrDefault(codePoint, 0L);
+        return glyphTable.getPatternOrDefault(codePoint, 0L);
     }
 
     /**
      * Check if a specific codepoint is supported
      */
     public boolean hasPattern(int codePoint) {
-        return glyphPatterns.containsKey(codePoint);
+        return glyphTable.contains(codePoint);
     }
 
     /**
@@ -138,6 +119,13 @@ public class GlyphManager {
         return glyphPatterns == null ? 0 : glyphPatterns.size();
     }
 
+    /**
+     * Get the patterns as primitive table for matching loops
+     */
+    public GlyphTable getGlyphTable() {
+        return glyphTable;
+    }
+
     /**
      * Get all available patterns
      */
@@ -1,8 +1,22 @@
 package core;
+import java.awt.Color;
 import java.awt.Font; // Import für java.awt.Font
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import core.data.GlyphPatternCache;
 import logger.Logger;
 import processing.core.PApplet;
 import processing.core.PConstants;
@@ -15,6 +29,8 @@ public class GlyphPatternGenerator {
     private PFont pFont; // Processing Font
     private Font nativeFont; // Java AWT Font
     private PGraphics glyphRenderer;
+    private String fontPath;
+    private float fontSize;
     private final int GLYPH_WIDTH = 8;
     private final int GLYPH_HEIGHT = 8;
     // private final int PIXEL_COUNT = GLYPH_WIDTH * GLYPH_HEIGHT;
@@ -25,8 +41,14 @@ public class GlyphPatternGenerator {
     private final int MIN_CODEPOINT = 0x0000;
     private final int MAX_CODEPOINT = 0xFFFF; // Basic Multilingual Plane
 
+    // Parallelscan: Codepoints pro Arbeitspaket und Abstand der Stichprobe
+    private static final int CHUNK_SIZE = 1024;
+    private static final int SAMPLE_STRIDE = 61;
+
     public GlyphPatternGenerator(PApplet papplet, String fontPath, float fontSize) {
         this.p = papplet;
+        this.fontPath = fontPath;
+        this.fontSize = fontSize;
         try {
             this.pFont = p.createFont(fontPath, fontSize, true); // true für smooth (wird aber eh gebinarisiert)
             if (this.pFont == null) {
@@ -65,10 +87,89 @@ public class GlyphPatternGenerator {
     /**
      * Generiert die Pattern-Bibliothek für alle von der Font unterstützten
      * Unicode-Codepoints im definierten Bereich.
+     * Liest die Patterns aus dem Cache, wenn für diese Font und Einstellungen
+     * schon ein Eintrag existiert, sonst wird gescannt und der Cache geschrieben.
      * 
      * @return Eine Map von Integer (Codepoint) zu Long (64-bit Pattern).
      */
     public Map<Integer, Long> generatePatterns() {
+        byte[] cacheKey = GlyphPatternCache.createKey(fontPath, fontSize, BRIGHTNESS_THRESHOLD, MIN_CODEPOINT,
+                MAX_CODEPOINT);
+        Map<Integer, Long> cached = GlyphPatternCache.load(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        Map<Integer, Long> patterns = scanPatternsParallel();
+        GlyphPatternCache.store(cacheKey, patterns);
+        return patterns;
+    }
+
+    /**
+     * Scannt den Unicode-Bereich parallel. Jeder Worker rendert mit eigenem
+     * BufferedImage/Graphics2D und denselben Einstellungen (Font, Rendering-Hints,
+     * Baseline), die der Processing-Renderer für text() verwendet. Eine
+     * Stichprobe wird danach mit dem sequentiellen Pfad verglichen; bei einer
+     * Abweichung wird komplett sequentiell gescannt.
+     */
+    private Map<Integer, Long> scanPatternsParallel() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (threads < 2) {
+            return scanPatterns();
+        }
+
+        Logger.println("Scanning Unicode range U+" + String.format("%04X", MIN_CODEPOINT) +
+                " to U+" + String.format("%04X", MAX_CODEPOINT) + " for displayable glyphs on " + threads
+                + " threads...");
+        long startTime = System.currentTimeMillis();
+
+        RenderState state = captureRenderState();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "glyph-rasterizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<Integer, Long> patterns = new HashMap<>();
+        try {
+            List<Future<ChunkResult>> chunks = new ArrayList<>();
+            for (int chunkStart = MIN_CODEPOINT; chunkStart <= MAX_CODEPOINT; chunkStart += CHUNK_SIZE) {
+                int from = chunkStart;
+                int to = Math.min(chunkStart + CHUNK_SIZE - 1, MAX_CODEPOINT);
+                chunks.add(pool.submit(() -> rasterizeChunk(state, from, to)));
+            }
+
+            // In Codepoint-Reihenfolge einfügen, wie der sequentielle Scan
+            for (Future<ChunkResult> chunk : chunks) {
+                ChunkResult result = chunk.get();
+                for (int i = 0; i < result.count; i++) {
+                    patterns.put(result.codePoints[i], result.patterns[i]);
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Logger.println("Parallel glyph scan failed (" + e.getMessage() + "), falling back to sequential scan.");
+            return scanPatterns();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (!matchesSequentialSample(patterns)) {
+            Logger.println("Parallel glyph scan differs from Processing renderer, falling back to sequential scan.");
+            return scanPatterns();
+        }
+
+        Logger.println("Finished scanning in " + (System.currentTimeMillis() - startTime) + " ms.");
+        Logger.println("Found and generated patterns for " + patterns.size() + " glyphs.");
+
+        // Füge manuell ein leeres Pattern für Codepoint 0 hinzu, falls es fehlt
+        patterns.putIfAbsent(0, 0L);
+        return patterns;
+    }
+
+    /**
+     * Scannt den Unicode-Bereich und rendert jedes darstellbare Zeichen.
+     */
+    private Map<Integer, Long> scanPatterns() {
         Map<Integer, Long> patterns = new HashMap<>();
         int glyphCount = 0;
 
@@ -76,75 +177,205 @@ public class GlyphPatternGenerator {
                 " to U+" + String.format("%04X", MAX_CODEPOINT) + " for displayable glyphs...");
 
         for (int codePoint = MIN_CODEPOINT; codePoint <= MAX_CODEPOINT; codePoint++) {
-            // Prüfen, ob die Font ein Glyph für diesen Codepoint hat
-            if (nativeFont.canDisplay(codePoint)) {
-
-                // Überspringe einige problematische/nicht-druckbare Kontrollzeichen
-                // (außer speziellen wie Leerzeichen, die wichtig sein könnten)
-                if (Character.isISOControl(codePoint) && !Character.isWhitespace(codePoint)) {
-                    // Optional: Loggen, welche übersprungen werden
-                    // Logger.println("Skipping control character: U+" + String.format("%04X",
-                    // codePoint));
-                    continue;
+            if (!isScannable(codePoint)) {
+                continue;
+            }
+
+            long pattern = renderPattern(codePoint);
+
+            // Füge Pattern nur hinzu, wenn es nicht komplett leer ist
+            // (Manche Fonts haben 'leere' Glyphen für nicht-unterstützte Zeichen,
+            // obwohl canDisplay true sagt, oder für Leerzeichen etc.)
+            // Wir wollen leere Patterns evtl. explizit (z.B. für Leerzeichen U+0020)
+            if (pattern != 0L || codePoint == ' ') { // Leerzeichen explizit erlauben
+                patterns.put(codePoint, pattern);
+                glyphCount++;
+            }
+
+            // Fortschrittsanzeige alle 1000 geprüften Codepoints
+            if (codePoint % 1000 == 0) {
+                System.out.print(".");
+            }
+        } // end for codePoint
+
+        Logger.println("\nFinished scanning.");
+        Logger.println("Found and generated patterns for " + glyphCount + " glyphs.");
+
+        // Füge manuell ein leeres Pattern für Codepoint 0 hinzu, falls es fehlt
+        // (Kann manchmal als Fallback nützlich sein)
+        patterns.putIfAbsent(0, 0L);
+
+        return patterns;
+    }
+
+    /**
+     * Prüft, ob die Font ein Glyph für diesen Codepoint hat und ob er gescannt
+     * werden soll
+     */
+    private boolean isScannable(int codePoint) {
+        if (!nativeFont.canDisplay(codePoint)) {
+            return false;
+        }
+        // Überspringe einige problematische/nicht-druckbare Kontrollzeichen
+        // (außer speziellen wie Leerzeichen, die wichtig sein könnten)
+        return !Character.isISOControl(codePoint) || Character.isWhitespace(codePoint);
+    }
+
+    /**
+     * Rendert ein Zeichen mit dem Processing-Renderer und liest das Pattern aus
+     */
+    private long renderPattern(int codePoint) {
+        // Konvertiere Codepoint zu String für die text() Methode
+        String charStr = Character.toString(codePoint);
+
+        // Rendere das Zeichen
+        glyphRenderer.beginDraw();
+        glyphRenderer.background(0); // Buffer löschen
+        glyphRenderer.fill(255);
+        // Zeichne den String am Ursprung (0,0 wegen TOP,LEFT Ausrichtung)
+        glyphRenderer.text(charStr, 0, 0);
+        glyphRenderer.endDraw();
+
+        // Pixel auslesen und Pattern erstellen
+        glyphRenderer.loadPixels();
+        long pattern = 0L;
+        for (int y = 0; y < GLYPH_HEIGHT; y++) {
+            for (int x = 0; x < GLYPH_WIDTH; x++) {
+                int pixelIndex = y * GLYPH_WIDTH + x;
+                int pixelColor = glyphRenderer.pixels[pixelIndex];
+                float brightness = p.brightness(pixelColor);
+
+                if (brightness > BRIGHTNESS_THRESHOLD) {
+                    pattern |= (1L << pixelIndex);
                 }
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * Liest Font, Rendering-Hints, Transformation und Baseline aus, mit denen
+     * der Processing-Renderer text() zeichnet, und die Helligkeitsschwelle als
+     * Tabelle über den maximalen Farbkanal (so rechnet brightness()).
+     */
+    private RenderState captureRenderState() {
+        RenderState state = new RenderState();
+        glyphRenderer.beginDraw();
+        Graphics2D g2 = (Graphics2D) glyphRenderer.getNative();
+        state.font = g2.getFont();
+        state.hints = new RenderingHints(null);
+        state.hints.putAll(g2.getRenderingHints());
+        // text() schaltet Antialiasing je nach PFont für die Dauer des Zeichnens um
+        state.hints.put(RenderingHints.KEY_ANTIALIASING,
+                pFont.isSmooth() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        state.transform = g2.getTransform();
+        // TOP-Ausrichtung: text() verschiebt y um textAscent() und rundet wie hier
+        state.baseline = (int) (glyphRenderer.textAscent() + 0.5f);
+        glyphRenderer.endDraw();
 
-                // Konvertiere Codepoint zu String für die text() Methode
-                String charStr = Character.toString(codePoint);
+        state.pixelOn = new boolean[256];
+        for (int v = 0; v < 256; v++) {
+            state.pixelOn[v] = p.brightness(0xFF000000 | (v << 16) | (v << 8) | v) > BRIGHTNESS_THRESHOLD;
+        }
+        return state;
+    }
 
-                // Rendere das Zeichen
-                glyphRenderer.beginDraw();
-                glyphRenderer.background(0); // Buffer löschen
-                glyphRenderer.fill(255);
-                // Zeichne den String am Ursprung (0,0 wegen TOP,LEFT Ausrichtung)
-                glyphRenderer.text(charStr, 0, 0);
-                glyphRenderer.endDraw();
+    /**
+     * Rendert alle darstellbaren Codepoints eines Bereichs mit einem eigenen
+     * Offscreen-Buffer (läuft auf einem Worker-Thread)
+     */
+    private ChunkResult rasterizeChunk(RenderState state, int from, int to) {
+        BufferedImage image = new BufferedImage(GLYPH_WIDTH, GLYPH_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHints(state.hints);
+        g2.setTransform(state.transform);
+        g2.setFont(state.font);
+        g2.setColor(Color.WHITE);
+
+        ChunkResult result = new ChunkResult(to - from + 1);
+        char[] chars = new char[2];
+        try {
+            for (int codePoint = from; codePoint <= to; codePoint++) {
+                if (!isScannable(codePoint)) {
+                    continue;
+                }
+
+                Arrays.fill(pixels, 0xFF000000); // background(0)
+                // text() teilt an '\n' in Zeilen und zeichnet dafür nichts
+                if (codePoint != '\n') {
+                    int length = Character.toChars(codePoint, chars, 0);
+                    g2.drawChars(chars, 0, length, 0, state.baseline);
+                }
 
-                // Pixel auslesen und Pattern erstellen
-                glyphRenderer.loadPixels();
                 long pattern = 0L;
-                boolean patternIsEmpty = true; // Prüfen, ob das gerenderte Glyph leer ist
-                for (int y = 0; y < GLYPH_HEIGHT; y++) {
-                    for (int x = 0; x < GLYPH_WIDTH; x++) {
-                        int pixelIndex = y * GLYPH_WIDTH + x;
-                        int pixelColor = glyphRenderer.pixels[pixelIndex];
-                        float brightness = p.brightness(pixelColor);
-
-                        if (brightness > BRIGHTNESS_THRESHOLD) {
-                            pattern |= (1L << pixelIndex);
-                            patternIsEmpty = false;
-                        }
+                for (int i = 0; i < pixels.length; i++) {
+                    int pixel = pixels[i];
+                    int max = Math.max((pixel >> 16) & 0xFF, Math.max((pixel >> 8) & 0xFF, pixel & 0xFF));
+                    if (state.pixelOn[max]) {
+                        pattern |= (1L << i);
                     }
                 }
 
-                // Füge Pattern nur hinzu, wenn es nicht komplett leer ist
-                // (Manche Fonts haben 'leere' Glyphen für nicht-unterstützte Zeichen,
-                // obwohl canDisplay true sagt, oder für Leerzeichen etc.)
-                // Wir wollen leere Patterns evtl. explizit (z.B. für Leerzeichen U+0020)
-                if (!patternIsEmpty || codePoint == ' ') { // Leerzeichen explizit erlauben
-                    patterns.put(codePoint, pattern);
-                    glyphCount++;
-                } else {
-                    // Optional: Loggen, welche Codepoints leere Glyphen erzeugt haben
-                    // Logger.println("Skipping empty glyph for U+" + String.format("%04X",
-                    // codePoint));
+                if (pattern != 0L || codePoint == ' ') {
+                    result.add(codePoint, pattern);
                 }
+            }
+        } finally {
+            g2.dispose();
+        }
+        return result;
+    }
 
-                // Fortschrittsanzeige alle 1000 geprüften Codepoints
-                if (codePoint % 1000 == 0) {
-                    System.out.print(".");
-                }
+    /**
+     * Vergleicht alle Zeichen unter U+0100 und jedes SAMPLE_STRIDE-te weitere
+     * Zeichen mit dem sequentiellen Processing-Pfad
+     */
+    private boolean matchesSequentialSample(Map<Integer, Long> patterns) {
+        for (int codePoint = MIN_CODEPOINT; codePoint <= MAX_CODEPOINT; codePoint++) {
+            if ((codePoint >= 0x100 && codePoint % SAMPLE_STRIDE != 0) || !isScannable(codePoint)) {
+                continue;
+            }
+            long expected = renderPattern(codePoint);
+            boolean expectedPresent = expected != 0L || codePoint == ' ';
+            Long actual = patterns.get(codePoint);
+            if (expectedPresent ? actual == null || actual != expected : actual != null) {
+                Logger.println("Glyph mismatch at U+" + String.format("%04X", codePoint));
+                return false;
+            }
+        }
+        return true;
+    }
 
-            } // end if canDisplay
-        } // end for codePoint
+    /**
+     * Renderer-Einstellungen, die jeder Worker übernimmt
+     */
+    private static class RenderState {
+        Font font;
+        RenderingHints hints;
+        AffineTransform transform;
+        int baseline;
+        boolean[] pixelOn; // Index: maximaler Farbkanal eines Pixels
+    }
 
-        Logger.println("\nFinished scanning.");
-        Logger.println("Found and generated patterns for " + glyphCount + " glyphs.");
+    /**
+     * Gefundene Patterns eines Codepoint-Bereichs, aufsteigend sortiert
+     */
+    private static class ChunkResult {
+        final int[] codePoints;
+        final long[] patterns;
+        int count;
 
-        // Füge manuell ein leeres Pattern für Codepoint 0 hinzu, falls es fehlt
-        // (Kann manchmal als Fallback nützlich sein)
-        patterns.putIfAbsent(0, 0L);
+        ChunkResult(int capacity) {
+            codePoints = new int[capacity];
+            patterns = new long[capacity];
+        }
 
-        return patterns;
+        void add(int codePoint, long pattern) {
+            codePoints[count] = codePoint;
+            patterns[count] = pattern;
+            count++;
+        }
     }
 
     /**
@@ -0,0 +1,279 @@
+package core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+/**
+ * Renders a result grid straight into the int[] pixels of one PImage.
+ *
+ * Glyphs are copied from the pre-rasterized masks of a {@link GlyphAtlas}
+ * instead of one fill()/rect() per glyph pixel. The finished image is drawn
+ * with a single image() call. Transparent cells (alpha below 127) keep their
+ * background pixels at 0 so the checkerboard shows through.
+ *
+ * Only the visible cells plus a margin are kept in the buffer, so its size
+ * follows the window and not the grid; panning re-renders once the view
+ * leaves the buffered region. When zoomed out below one screen pixel per
+ * glyph pixel each cell is drawn as a block of its average colour, taken from
+ * a per-cell level that is built once per grid and patched for edited cells.
+ *
+ * The buffer is kept between frames. After the first full render only cells
+ * marked with invalidateCell/invalidateRegion are drawn again; a different
+ * grid instance, a new zoom or invalidateAll cause a full render. Marking is
+ * thread safe, solver threads mark the tiles they finish.
+ */
+public class GlyphRenderer {
+    private final PApplet app;
+    private final GlyphAtlas glyphAtlas;
+    private PImage image;
+    private int scale;
+    private int zoomOutLevel;
+
+    // Cells [regionX0, regionX1) x [regionY0, regionY1) held by the buffer
+    private int regionX0, regionY0, regionX1, regionY1;
+
+    // Average colour per cell, used for the zoomed out levels
+    private int[] cellAverages;
+    private boolean averagesValid;
+
+    // Grid the buffer currently shows and the cells changed since
+    private ResultGlyph[][] renderedGrid;
+    private int renderedColumns;
+    private boolean fullRedraw = true;
+    private BitSet dirtyCells = new BitSet();
+
+    public GlyphRenderer(PApplet app, GlyphAtlas glyphAtlas) {
+        this.app = app;
+        this.glyphAtlas = glyphAtlas;
+    }
+
+    /**
+     * Render the whole grid at the given scale (buffer as large as the grid)
+     */
+    public PImage render(ResultGlyph[][] grid, GlyphTable glyphTable, int scale) {
+        int rows = grid.length;
+        int columns = rows > 0 ? grid[0].length : 0;
+        return render(grid, glyphTable, scale, 0, 0, 0, columns, rows);
+    }
+
+    /**
+     * Bring the buffer up to date for the visible cells [x0, x1) x [y0, y1)
+     * and return it. A zoomOutLevel of n &gt; 0 draws every cell with
+     * GLYPH_WIDTH &gt;&gt; n pixels in its average colour, scale is ignored
+     * then. The image starts at cell (getRegionX(), getRegionY()) and is
+     * reused by the next call.
+     */
+    public PImage render(ResultGlyph[][] grid, GlyphTable glyphTable, int scale, int zoomOutLevel, int x0, int y0,
+            int x1, int y1) {
+        // Size from the array itself, the grid fields may already belong to the next image
+        int rows = grid.length;
+        int columns = rows > 0 ? grid[0].length : 0;
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(columns, x1);
+        y1 = Math.min(rows, y1);
+
+        boolean full;
+        BitSet cells;
+        synchronized (this) {
+            full = fullRedraw || grid != renderedGrid;
+            if (full) {
+                averagesValid = false;
+            }
+            cells = dirtyCells;
+            dirtyCells = new BitSet();
+            fullRedraw = false;
+            renderedGrid = grid;
+            renderedColumns = columns;
+        }
+
+        if (zoomOutLevel > 0 && !averagesValid) {
+            buildAverages(grid, columns, glyphTable);
+        } else if (averagesValid) {
+            for (int i = cells.nextSetBit(0); i >= 0 && i < columns * rows; i = cells.nextSetBit(i + 1)) {
+                cellAverages[i] = averageColor(grid[i / columns][i % columns], glyphTable);
+            }
+        }
+
+        boolean inRegion = x0 >= regionX0 && y0 >= regionY0 && x1 <= regionX1 && y1 <= regionY1;
+        if (full || !inRegion || scale != this.scale || zoomOutLevel != this.zoomOutLevel || image == null) {
+            // Buffer the visible cells plus a margin, so small pans stay inside it
+            int marginX = Math.max(4, (x1 - x0) / 4);
+            int marginY = Math.max(4, (y1 - y0) / 4);
+            regionX0 = Math.max(0, x0 - marginX);
+            regionY0 = Math.max(0, y0 - marginY);
+            regionX1 = Math.min(columns, x1 + marginX);
+            regionY1 = Math.min(rows, y1 + marginY);
+            this.scale = scale;
+            this.zoomOutLevel = zoomOutLevel;
+            ensureImage(regionX1 - regionX0, regionY1 - regionY0);
+
+            Arrays.fill(image.pixels, 0);
+            for (int y = regionY0; y < regionY1; y++) {
+                for (int x = regionX0; x < regionX1; x++) {
+                    drawCell(grid, columns, x, y, glyphTable);
+                }
+            }
+            image.updatePixels();
+        } else if (!cells.isEmpty()) {
+            int minX = columns, minY = rows, maxX = -1, maxY = -1;
+            for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+                int x = i % columns;
+                int y = i / columns;
+                if (y >= regionY1) {
+                    break;
+                }
+                if (y < regionY0 || x < regionX0 || x >= regionX1) {
+                    continue; // off screen, drawn when the view reaches it
+                }
+                drawCell(grid, columns, x, y, glyphTable);
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+            if (maxX >= 0) {
+                int cellWidth = cellWidth();
+                int cellHeight = cellHeight();
+                image.updatePixels((minX - regionX0) * cellWidth, (minY - regionY0) * cellHeight,
+                        (maxX - minX + 1) * cellWidth, (maxY - minY + 1) * cellHeight);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * First grid column in the image returned by the last render
+     */
+    public int getRegionX() {
+        return regionX0;
+    }
+
+    /**
+     * First grid row in the image returned by the last render
+     */
+    public int getRegionY() {
+        return regionY0;
+    }
+
+    /**
+     * Mark one cell of the shown grid for redrawing
+     */
+    public synchronized void invalidateCell(int x, int y) {
+        if (renderedColumns > 0 && x >= 0 && x < renderedColumns && y >= 0) {
+            dirtyCells.set(y * renderedColumns + x);
+        }
+    }
+
+    /**
+     * Mark the cells [x0, x1) x [y0, y1) of the shown grid for redrawing
+     */
+    public synchronized void invalidateRegion(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        x1 = Math.min(renderedColumns, x1);
+        for (int y = Math.max(0, y0); y < y1; y++) {
+            if (x0 < x1) {
+                dirtyCells.set(y * renderedColumns + x0, y * renderedColumns + x1);
+            }
+        }
+    }
+
+    /**
+     * Draw the whole grid again on the next render
+     */
+    public synchronized void invalidateAll() {
+        fullRedraw = true;
+    }
+
+    /**
+     * True if the next render changes the buffer (or the grid was never drawn)
+     */
+    public synchronized boolean hasPendingChanges(ResultGlyph[][] grid) {
+        return fullRedraw || grid != renderedGrid || !dirtyCells.isEmpty();
+    }
+
+    private int cellWidth() {
+        return zoomOutLevel > 0 ? ProcessingCore.GLYPH_WIDTH >> zoomOutLevel : ProcessingCore.GLYPH_WIDTH * scale;
+    }
+
+    private int cellHeight() {
+        return zoomOutLevel > 0 ? ProcessingCore.GLYPH_HEIGHT >> zoomOutLevel : ProcessingCore.GLYPH_HEIGHT * scale;
+    }
+
+    /**
+     * Draw a cell of the grid at its place in the buffered region
+     */
+    private void drawCell(ResultGlyph[][] grid, int columns, int x, int y, GlyphTable glyphTable) {
+        int[] pixels = image.pixels;
+        int left = (x - regionX0) * cellWidth();
+        int top = (y - regionY0) * cellHeight();
+        if (zoomOutLevel > 0) {
+            fillBlock(pixels, image.width, left, top, cellWidth(), cellHeight(), cellAverages[y * columns + x]);
+            return;
+        }
+        ResultGlyph glyph = grid[y][x];
+        if (glyph == null) {
+            // not solved yet (background conversion)
+            fillBlock(pixels, image.width, left, top, cellWidth(), cellHeight(), 0);
+        } else {
+            glyphAtlas.drawGlyph(pixels, image.width, left, top, scale,
+                    glyphTable.getPatternOrDefault(glyph.codePoint, 0L), ColorPalette.getColors()[glyph.fgIndex],
+                    backgroundColor(glyph));
+        }
+    }
+
+    private void buildAverages(ResultGlyph[][] grid, int columns, GlyphTable glyphTable) {
+        if (cellAverages == null || cellAverages.length != grid.length * columns) {
+            cellAverages = new int[grid.length * columns];
+        }
+        for (int y = 0; y < grid.length; y++) {
+            for (int x = 0; x < columns; x++) {
+                cellAverages[y * columns + x] = averageColor(grid[y][x], glyphTable);
+            }
+        }
+        averagesValid = true;
+    }
+
+    /**
+     * Mean ARGB colour of the 64 pixels of a cell (0 for unsolved cells)
+     */
+    static int averageColor(ResultGlyph glyph, GlyphTable glyphTable) {
+        if (glyph == null) {
+            return 0;
+        }
+        int on = Long.bitCount(glyphTable.getPatternOrDefault(glyph.codePoint, 0L));
+        int off = ProcessingCore.GLYPH_WIDTH * ProcessingCore.GLYPH_HEIGHT - on;
+        int fg = ColorPalette.getColors()[glyph.fgIndex];
+        int bg = backgroundColor(glyph);
+        int color = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel = (((fg >>> shift) & 0xFF) * on + ((bg >>> shift) & 0xFF) * off + 32) >> 6;
+            color |= channel << shift;
+        }
+        return color;
+    }
+
+    static int backgroundColor(ResultGlyph glyph) {
+        return glyph.alpha < 127 ? 0 : ColorPalette.getColors()[glyph.bgIndex];
+    }
+
+    private static void fillBlock(int[] pixels, int stride, int left, int top, int width, int height, int color) {
+        for (int line = 0; line < height; line++) {
+            int offset = (top + line) * stride + left;
+            Arrays.fill(pixels, offset, offset + width, color);
+        }
+    }
+
+    private void ensureImage(int columns, int rows) {
+        int width = Math.max(1, columns * cellWidth());
+        int height = Math.max(1, rows * cellHeight());
+        if (image == null || image.width != width || image.height != height) {
+            image = app.createImage(width, height, PConstants.ARGB);
+            image.loadPixels();
+        }
+    }
+}
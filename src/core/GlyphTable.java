@@ -0,0 +1,102 @@
+package core;
+
+import java.util.Map;
+
+/**
+ * Glyph patterns stored as parallel primitive arrays.
+ *
+ * Entry i is codePoints[i] with patterns[i]; the order is the iteration order
+ * of the pattern map the table was built from, so scanning the arrays visits
+ * the glyphs exactly like the old entrySet() loops (same tie behaviour).
+ * Lookups by codepoint go through a small open-addressing index that stores
+ * entry positions.
+ */
+public class GlyphTable {
+    private final int[] codePoints;
+    private final long[] patterns;
+    private final int[] slots; // entry position + 1, 0 = empty
+    private final int mask;
+
+    public GlyphTable(Map<Integer, Long> glyphPatterns) {
+        int count = glyphPatterns.size();
+        codePoints = new int[count];
+        patterns = new long[count];
+
+        int capacity = Integer.highestOneBit(Math.max(4, count * 2) - 1) << 1;
+        slots = new int[capacity];
+        mask = capacity - 1;
+
+        int i = 0;
+        for (Map.Entry<Integer, Long> entry : glyphPatterns.entrySet()) {
+            codePoints[i] = entry.getKey();
+            patterns[i] = entry.getValue();
+            int slot = slotFor(codePoints[i]);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+            i++;
+        }
+    }
+
+    public int size() {
+        return codePoints.length;
+    }
+
+    public int getCodePoint(int index) {
+        return codePoints[index];
+    }
+
+    public long getPattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * Position of the codepoint in the table, or -1 if the font has no glyph
+     * for it
+     */
+    public int indexOf(int codePoint) {
+        int slot = slotFor(codePoint);
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            if (codePoints[entry - 1] == codePoint) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(int codePoint) {
+        return indexOf(codePoint) >= 0;
+    }
+
+    /**
+     * Pattern of the codepoint, or defaultPattern if the font has no glyph for
+     * it
+     */
+    public long getPatternOrDefault(int codePoint, long defaultPattern) {
+        int index = indexOf(codePoint);
+        return index >= 0 ? patterns[index] : defaultPattern;
+    }
+
+    /**
+     * Backing codepoint array for scanning loops, must not be modified
+     */
+    int[] codePointArray() {
+        return codePoints;
+    }
+
+    /**
+     * Backing pattern array for scanning loops, must not be modified
+     */
+    long[] patternArray() {
+        return patterns;
+    }
+
+    private int slotFor(int codePoint) {
+        // Fibonacci hashing, neighbouring codepoints land in different slots
+        int h = codePoint * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
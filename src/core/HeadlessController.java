@@ -1,5 +1,6 @@
 package core;
  
+import core.data.ImageExporter;
 import logger.Logger;
 import processing.core.PApplet;
 import ui.ControlPanel;
@@ -10,6 +11,11 @@ public class HeadlessController {
     public static boolean darkFirst = false;
     public static boolean lightFirst = false;
     public static int pngScale = 2;
+    public static boolean bandedDecode = false;
+    // Images with at least this many pixels are decoded in bands (-bands=<megapixels>),
+    // 0 only with -bands. Bands are resized with a box filter, not PImage.resize,
+    // so the glyphs can differ slightly from a normal run
+    public static long bandedDecodePixels = 0;
     public static String imgPath = null;
     public static String inputFormat = null;
     public static String outputPath = null; 
@@ -39,6 +45,77 @@ public class HeadlessController {
                     pngScale = 2;
                 }   
             }
+            else if (arg.startsWith("-cols=")) {
+                try {
+                    ProcessingCore.targetColumns = Integer.parseInt(arg.substring("-cols=".length()));
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid column count provided. Ignoring it.");
+                }
+            }
+            else if (arg.startsWith("-rows=")) {
+                try {
+                    ProcessingCore.targetRows = Integer.parseInt(arg.substring("-rows=".length()));
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid row count provided. Ignoring it.");
+                }
+            }
+            else if (arg.equals("-native"))
+                ProcessingCore.nativeResolution = true;
+            else if (arg.equals("-bands"))
+                bandedDecode = true;
+            else if (arg.startsWith("-bands=")) {
+                try {
+                    bandedDecodePixels = Math.max(0, Long.parseLong(arg.substring("-bands=".length()))) << 20;
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid band size provided. Decoding in bands only with -bands.");
+                }
+            }
+            else if (arg.startsWith("-z=")) {
+                try {
+                    int level = Integer.parseInt(arg.substring("-z=".length()));
+                    ImageExporter.compressionLevel = Math.max(0, Math.min(9, level));
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid compression level provided. Using default level of 6.");
+                }
+            }
+            else if (arg.startsWith("-threads=")) {
+                try {
+                    MultiThreadSolver.parallelism = Integer.parseInt(arg.substring("-threads=".length()));
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid thread count provided. Using all processors.");
+                }
+            }
+            else if (arg.equals("-optimal"))
+                MultiThreadSolver.approxAlgorithm = MultiThreadSolver.ApproxAlgorithm.OPTIMAL;
+            else if (arg.startsWith("-candidates=")) {
+                try {
+                    MultiThreadSolver.shapeCandidates = Math.max(0, Integer.parseInt(arg.substring("-candidates=".length())));
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid candidate count provided. Scoring all glyphs.");
+                }
+            }
+            else if (arg.equals("-novector"))
+                MultiThreadSolver.vectorScoring = false;
+            else if (arg.equals("-tiletimes"))
+                MultiThreadSolver.logTileTimings = true;
+            else if (arg.startsWith("-tilecells=")) {
+                try {
+                    MultiThreadSolver.maxTileCells = Math.max(1, Integer.parseInt(arg.substring("-tilecells=".length())));
+                } catch (NumberFormatException e) {
+                    Logger.println("Invalid tile size provided. Using 64 cells per tile.");
+                }
+            }
+            else if (arg.startsWith("-tie=")) {
+                String policy = arg.substring("-tie=".length());
+                if (policy.equals("lowest"))
+                    MultiThreadSolver.tieBreak = GlyphClasses.TieBreak.LOWEST_CODEPOINT;
+                else if (policy.equals("ascii"))
+                    MultiThreadSolver.tieBreak = GlyphClasses.TieBreak.ASCII_FIRST;
+                else if (policy.equals("table"))
+                    MultiThreadSolver.tieBreak = GlyphClasses.TieBreak.TABLE_ORDER;
+                else
+                    Logger.println("Unknown tie-break policy '" + policy + "'. Using table order.");
+            }
             else if(arg.startsWith("-help") || arg.startsWith("--help")){
                 Logger.println("Usage: java -jar UnsciiGeneratorHeadless.jar [options] <input_image_path> <output_directory>");
                 Logger.println("Options:");
@@ -47,6 +124,19 @@ public class HeadlessController {
                 Logger.println("  -dark          Prefer dark characters for rendering");
                 Logger.println("  -light         Prefer light characters for rendering");
                 Logger.println("  -s=<num>       Set scale factor for PNG output (default is 2)");
+                Logger.println("  -cols=<num>    Number of glyph columns (height follows the aspect ratio)");
+                Logger.println("  -rows=<num>    Number of glyph rows (with -cols: fit into cols x rows)");
+                Logger.println("  -native        One glyph per 8x8 source pixels, no resizing");
+                Logger.println("  -bands         Decode the image in bands (box filter resize, may differ slightly)");
+                Logger.println("  -bands=<num>   Decode in bands only images of at least <num> megapixels");
+                Logger.println("  -z=<0-9>       PNG compression level, 0 fastest, 9 smallest (default is 6)");
+                Logger.println("  -threads=<num> Number of solver threads (default: all processors)");
+                Logger.println("  -tie=<policy>  Glyph preferred on equal results: table (default), lowest, ascii");
+                Logger.println("  -optimal       Choose the colour pair per glyph (slower, better gradients)");
+                Logger.println("  -candidates=<num> Only score the <num> glyph shapes closest to each block (0 = all, exact)");
+                Logger.println("  -novector      Score glyphs without the JDK Vector API even if it is available");
+                Logger.println("  -tiletimes     Log tile count, tile durations and busy time per solver thread");
+                Logger.println("  -tilecells=<num> Split the grid into tiles of at most <num> cells (default is 64)");
                 return;
             }
             //Example usage:
@@ -58,6 +148,18 @@ public class HeadlessController {
             //-dark : use dark first algo
             //-light: use light first algo
             //-s=<num> : set scale factor for PNG output (default is 2)
+            //-cols=<num> / -rows=<num> : grid size in glyphs (default: fit into 50x30)
+            //-native : keep the source resolution, one glyph per 8x8 pixels
+            //-bands : decode in bands of one glyph row instead of loading the whole image
+            //-bands=<num> : decode in bands only from <num> megapixels on (default: never automatically)
+            //-z=<0-9> : png compression level (0 fastest, 9 smallest)
+            //-threads=<num> : number of solver threads
+            //-tie=<table|lowest|ascii> : glyph preferred when several give the same result
+            //-optimal : best palette colour pair per glyph instead of the two dominant colours
+            //-candidates=<num> : score only the closest glyph shapes per block (faster, not exact)
+            //-novector : do not use the jdk.incubator.vector scorer
+            //-tiletimes : log per-tile timings of the solver
+            //-tilecells=<num> : maximum cells per solver tile
             // [path] : path to the input image
             // [path] : path to the output directory (if -png or -unc is specified)
             // 
@@ -1,5 +1,6 @@
 package core;
 
+import core.data.BandImageReader;
 import core.data.ImageExporter;
 import core.data.UscExportManager;
 import logger.Logger; 
@@ -16,7 +17,16 @@ public class HeadlessCore extends ProcessingCore {
         headless = true;
         super.init();
         noLoop();
-        loadAndProcessImage(HeadlessController.imgPath);
+        // Large images can be decoded band by band instead of loading them as a whole
+        boolean banded = HeadlessController.bandedDecode;
+        if (!banded && HeadlessController.bandedDecodePixels > 0) {
+            banded = BandImageReader.pixelCount(HeadlessController.imgPath) >= HeadlessController.bandedDecodePixels;
+        }
+        if (banded) {
+            loadAndProcessImageInBands(HeadlessController.imgPath);
+        } else {
+            loadAndProcessImage(HeadlessController.imgPath);
+        }
 
         if (HeadlessController.outputUnc) {
             String path = HeadlessController.outputPath + "/" + HeadlessController.outputFileName + ".unc2";
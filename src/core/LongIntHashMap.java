@@ -0,0 +1,117 @@
+package core;
+
+/**
+ * Minimal open-addressing hash map from primitive long keys to int values.
+ * Avoids boxing for lookups in the matching hot path.
+ */
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the value stored for the key, or defaultValue if the key is absent
+     */
+    public int getOrDefault(long key, int defaultValue) {
+        int slot = slotFor(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        int slot = slotFor(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Stores the value for the key, replacing any previous value
+     */
+    public void put(long key, int value) {
+        insert(key, value, true);
+    }
+
+    /**
+     * Stores the value only if the key is not present yet
+     *
+     * @return true if the value was stored
+     */
+    public boolean putIfAbsent(long key, int value) {
+        return insert(key, value, false);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean insert(long key, int value, boolean replace) {
+        int slot = slotFor(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                if (replace) {
+                    values[slot] = value;
+                }
+                return replace;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        size++;
+        if (size > keys.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return true;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(oldKeys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                insert(oldKeys[i], oldValues[i], true);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotFor(long key) {
+        // 64-bit finalizer from MurmurHash3, spreads glyph bit patterns evenly
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
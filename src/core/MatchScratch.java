@@ -0,0 +1,78 @@
+package core;
+
+/**
+ * Reusable buffers for matching one block, one instance per solver thread.
+ *
+ * Passed through block extraction, the tile cache lookup, the dominant colour
+ * search and the bitmask matcher, so solving a block allocates nothing but
+ * the resulting glyph (and a cache entry on a miss). Contents are only valid
+ * until the same thread solves the next block.
+ */
+final class MatchScratch {
+    private static final ThreadLocal<MatchScratch> PER_THREAD = ThreadLocal.withInitial(MatchScratch::new);
+
+    // Pixels of the current block
+    final int[] blockPixels = new int[ProcessingCore.PIXEL_COUNT];
+
+    // Dominant colour search: palette index per pixel, counts per palette entry
+    // (all zero between calls) and the two result indices
+    final int[] paletteIndices = new int[ProcessingCore.PIXEL_COUNT];
+    final int[] paletteCounts = new int[256];
+    final int[] dominant = new int[2];
+
+    // BitmaskMatcher: per-pixel cost difference, cost sums of both colours and
+    // the eight row tables
+    final int[] delta = new int[ProcessingCore.PIXEL_COUNT];
+    final int[] colorCosts = new int[2];
+    final int[] rowSums = new int[8 * 256];
+    // OptimalMatcher: row tables of the red, green and blue channel sums
+    final int[] channelRowSums = new int[3 * 8 * 256];
+    // S of every shape class, grown to the class count on first use
+    int[] shapeSums = new int[0];
+
+    // Best candidate of the block being matched
+    final BitmaskMatcher.Decision decision = new BitmaskMatcher.Decision();
+
+    // Decision record of the block being solved (see DecisionRecords), only
+    // filled while recording is set
+    boolean recording;
+    int recordCandidates;
+    int[] decisionRecord = new int[DecisionRecords.HEADER];
+
+    // ShapeIndex query: candidate classes, their distances and the search stack
+    int[] candidateClasses = new int[0];
+    int[] candidateDistances = new int[0];
+    int[] indexStack = new int[0];
+
+    // Tile cache lookup key pointing at blockPixels, never stored in the cache
+    final TileCache.BlockKey probeKey = TileCache.BlockKey.probe();
+
+    /**
+     * Size the ShapeIndex buffers for k candidates out of classCount classes
+     */
+    void ensureCandidates(int k, int classCount) {
+        if (candidateClasses.length < k) {
+            candidateClasses = new int[k];
+            candidateDistances = new int[k];
+        }
+        if (indexStack.length < classCount) {
+            indexStack = new int[classCount];
+        }
+    }
+
+    /**
+     * Size the decision record for k candidates
+     */
+    void ensureDecision(int k) {
+        if (decisionRecord.length < DecisionRecords.length(k)) {
+            decisionRecord = new int[DecisionRecords.length(k)];
+        }
+    }
+
+    /**
+     * Scratch of the calling thread
+     */
+    static MatchScratch get() {
+        return PER_THREAD.get();
+    }
+}
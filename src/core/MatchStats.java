@@ -0,0 +1,52 @@
+package core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import logger.Logger;
+
+/**
+ * Counts how the blocks of a conversion were solved: from the tile cache,
+ * exact match, or approximation after the exact check failed on the colours
+ * (more than two, or not exactly palette entries) or on the shape (no glyph
+ * with that pattern). Updated from the solver threads, logged and reset per
+ * image.
+ */
+final class MatchStats {
+    private final LongAdder cached = new LongAdder();
+    private final LongAdder exact = new LongAdder();
+    private final LongAdder rejectedColors = new LongAdder();
+    private final LongAdder rejectedShape = new LongAdder();
+
+    void countCached() {
+        cached.increment();
+    }
+
+    void countExact() {
+        exact.increment();
+    }
+
+    void countRejectedColors() {
+        rejectedColors.increment();
+    }
+
+    void countRejectedShape() {
+        rejectedShape.increment();
+    }
+
+    /**
+     * Log the counts since the last call and reset them
+     */
+    void logAndReset() {
+        long cachedCount = cached.sumThenReset();
+        long exactCount = exact.sumThenReset();
+        long colorCount = rejectedColors.sumThenReset();
+        long shapeCount = rejectedShape.sumThenReset();
+        long solved = exactCount + colorCount + shapeCount;
+        if (cachedCount + solved > 0) {
+            Logger.println("Blocks: " + cachedCount + " from tile cache, " + exactCount + " exact, "
+                    + (colorCount + shapeCount) + " approximated (" + colorCount + " by colour precheck, "
+                    + shapeCount + " without matching glyph)"
+                    + (solved > 0 ? ", " + (exactCount * 100 / solved) + "% of the solved ones exact." : "."));
+        }
+    }
+}
@@ -1,50 +1,520 @@
 package core;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.IntStream;
 
 import logger.Logger;
+import processing.core.PImage;
 
 public class  MultiThreadSolver {
+    /**
+     * Available implementations of the approximate (two dominant colors) match
+     */
+    public enum ApproxAlgorithm {
+        PER_PIXEL, // ProcessingCore.findApproximateMatch, float error per pixel
+        BITMASK, // BitmaskMatcher, row lookup tables over the glyph bits
+        OPTIMAL // OptimalMatcher, best palette pair per glyph with bound pruning
+    }
+
+    public static ApproxAlgorithm approxAlgorithm = ApproxAlgorithm.BITMASK;
+
+    // Score the shape classes with the JDK Vector API when the module is present
+    // (applied when the matchers are built)
+    public static boolean vectorScoring = true;
+
+    // Score only this many shape classes closest to the binarised block (ShapeIndex),
+    // 0 scores all of them. Faster but no longer exact; meant for batch runs
+    public static int shapeCandidates = 0;
+
+    // Shape classes kept per cell for re-deciding it after a preference change
+    // (DecisionRecords, GUI only), 0 disables the records. Costs 4 * (5 + 3 * n) + 1
+    // bytes per cell, 117 at the default
+    public static int decisionCandidates = 8;
+
+    // Grids with more cells get no decision records (30 MB at the default candidates,
+    // a 4096x4096 image); a preference change then applies to the next conversion
+    public static int maxDecisionCells = 512 * 512;
+
+    // Glyph preferred when several give the same result (applied when the matchers are built)
+    public static GlyphClasses.TieBreak tieBreak = GlyphClasses.TieBreak.TABLE_ORDER;
+
+    // Maximum number of solved blocks kept in the tile cache (0 disables it)
+    public static int tileCacheSize = 32768;
+
+    // Worker threads of the solver pool (the common pool is shared with Swing/Processing)
+    public static int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // Tiles with more cells are split further; small enough that idle workers find work to steal
+    public static int maxTileCells = 64;
+
+    // Collect tile timings and log a per-tile summary after each run (-tiletimes)
+    public static boolean logTileTimings = false;
+
+    private static final AtomicInteger solverThreadCount = new AtomicInteger();
+    private static final ForkJoinPool.ForkJoinWorkerThreadFactory solverThreadFactory = pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("solver-" + solverThreadCount.incrementAndGet());
+        return thread;
+    };
+
     ProcessingCore core;
-    
+    private ForkJoinPool pool;
+    private final Queue<TileTiming> tileTimings = new ConcurrentLinkedQueue<>();
+    private volatile Conversion currentConversion;
+    private volatile ForkJoinTask<?> gridTask;
+    private long bandStartTime;
+    // Shared by all conversions of this core: the whole grid, selection reprocessing and batch images
+    final TileCache tileCache = new TileCache(Math.max(1, tileCacheSize));
+
     public MultiThreadSolver(ProcessingCore core) {
         this.core = core;
     }
 
-    void generateAsciiArtExact() {
-        AtomicInteger processedRows = new AtomicInteger(0);
-        
-        IntStream.range(0, core.gridHeight).parallel().forEach(gridY -> {
-            for (int gridX = 0; gridX < core.gridWidth; gridX++) {
-                int[] blockPixels = core.extractBlockPixels(gridX, gridY);
-
-                // Try to find an exact match first
-                ResultGlyph exactMatchResult = core.findExactMatch(blockPixels);
-                if (exactMatchResult != null) {
-                    core.resultGrid[gridY][gridX] = exactMatchResult;
-                    continue;
-                }
+    /**
+     * Solve one block: tile cache, then exact match, then approximation
+     */
+    ResultGlyph solveBlock(int[] blockPixels) {
+        return solveBlock(blockPixels, MatchScratch.get());
+    }
 
-                // Fall back to approximation if no exact match
-                core.resultGrid[gridY][gridX] = core.findApproximateMatch(blockPixels);
+    /**
+     * Solve one block with the buffers of the calling thread, nothing is
+     * allocated besides the result (and the cache entry on a miss)
+     */
+    ResultGlyph solveBlock(int[] blockPixels, MatchScratch scratch) {
+        TileCache.BlockKey key = null;
+        if (tileCacheSize > 0) {
+            key = scratch.probeKey.set(blockPixels);
+            ResultGlyph cached = tileCache.get(key);
+            if (cached != null) {
+                core.matchStats.countCached();
+                return cached;
             }
-            
-            // Optional: Thread-safe progress update (may impact performance slightly)
-            int current = processedRows.incrementAndGet();
-            if (current % 10 == 0 || current == core.gridHeight) {
-                // Logger.println("Processed row " + current + "/" + gridHeight); 
+        }
+
+        // Try to find an exact match first
+        ResultGlyph result = core.findExactMatch(blockPixels);
+        if (result != null && scratch.recording) {
+            scratch.decisionRecord[DecisionRecords.STATE] = DecisionRecords.EXACT;
+        }
+        if (result == null) {
+            // Fall back to approximation if no exact match
+            result = findApproximateMatch(blockPixels, scratch);
+        }
+
+        if (key != null) {
+            tileCache.put(key.copy(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Let the matcher fill scratch.decisionRecord for the records (if any)
+     */
+    private static void startRecording(MatchScratch scratch, DecisionRecords records) {
+        scratch.recording = records != null;
+        scratch.ensureDecision(records != null ? records.candidates : 0);
+        scratch.recordCandidates = records != null ? records.candidates : 0;
+    }
+
+    /**
+     * Apply changed preference settings to the result grid from its decision
+     * records: every approximated cell is decided again right away from its
+     * recorded candidates. Cells the record cannot decide (or without record)
+     * are solved again in the background on the solver pool, like a
+     * conversion. Exact cells and cells changed by hand stay. A running conversion has to be cancelled
+     * and awaited (awaitGridTask) before.
+     *
+     * @return future completing when the remaining cells are solved (already
+     *         complete if there are none), null if there are no records for
+     *         the current grid
+     */
+    CompletableFuture<ResultGlyph[][]> redecideGrid() {
+        DecisionRecords records = core.decisionRecords;
+        ResultGlyph[][] grid = core.resultGrid;
+        PImage image = core.inputImage;
+        if (records == null || records.grid != grid || image == null) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        MatchScratch scratch = MatchScratch.get();
+        boolean bitmask = approxAlgorithm == ApproxAlgorithm.BITMASK;
+        int[] data = records.data();
+        int gridHeight = grid.length;
+        int gridWidth = gridHeight > 0 ? grid[0].length : 0;
+        boolean[] pending = new boolean[gridWidth * gridHeight];
+        int redecided = 0;
+        int pendingCount = 0;
+        for (int gridY = 0; gridY < gridHeight; gridY++) {
+            for (int gridX = 0; gridX < gridWidth; gridX++) {
+                int offset = records.offset(gridX, gridY);
+                if (data[offset + DecisionRecords.STATE] == DecisionRecords.EXACT
+                        || records.isEdited(gridX, gridY)) {
+                    continue;
+                }
+                ResultGlyph result = bitmask ? core.bitmaskMatcher.redecide(data, offset, scratch) : null;
+                if (result != null) {
+                    grid[gridY][gridX] = result;
+                    redecided++;
+                } else {
+                    pending[gridY * gridWidth + gridX] = true;
+                    pendingCount++;
+                }
             }
-        });
+        }
+        core.invalidateAllCells();
+        Logger.println("Preferences applied: " + redecided + " cells re-decided in "
+                + (System.nanoTime() - startTime) / 1000 + " us, " + pendingCount + " to solve again.");
+        if (pendingCount == 0) {
+            return CompletableFuture.completedFuture(grid);
+        }
+        CompletableFuture<ResultGlyph[][]> future = new CompletableFuture<>();
+        return submit(new Conversion(image, grid, false, future, 0, records, pending));
+    }
+
+    /**
+     * Log exact/approximate counts and tile cache hits since the last call and
+     * reset the counters
+     */
+    void logSolveStats() {
+        core.matchStats.logAndReset();
+        if (tileCacheSize <= 0) {
+            return;
+        }
+        long hits = tileCache.getHits();
+        long total = hits + tileCache.getMisses();
+        if (total > 0) {
+            Logger.println("Tile cache: " + hits + "/" + total + " blocks reused ("
+                    + (hits * 100 / total) + "%), " + tileCache.size() + " entries.");
+        }
+        tileCache.resetStats();
+    }
+
+    /**
+     * Approximate match with the selected algorithm
+     */
+    ResultGlyph findApproximateMatch(int[] blockPixels) {
+        return findApproximateMatch(blockPixels, MatchScratch.get());
+    }
+
+    ResultGlyph findApproximateMatch(int[] blockPixels, MatchScratch scratch) {
+        switch (approxAlgorithm) {
+            case BITMASK:
+                return core.bitmaskMatcher.findApproximateMatch(blockPixels, scratch);
+            case OPTIMAL:
+                return core.optimalMatcher.findMatch(blockPixels, scratch);
+            case PER_PIXEL:
+            default:
+                return core.findApproximateMatch(blockPixels);
+        }
+    }
+
+    void generateAsciiArtExact() {
+        solveRegion(0, 0, core.gridWidth, core.gridHeight, false);
     }
 
     void generateAsciiArtApproxOnly() {
-        IntStream.range(0, core.gridHeight).parallel().forEach(gridY -> {
-            for (int gridX = 0; gridX < core.gridWidth; gridX++) {
-                int[] blockPixels = core.extractBlockPixels(gridX, gridY);
-                core.resultGrid[gridY][gridX] = core.findApproximateMatch(blockPixels);
+        solveRegion(0, 0, core.gridWidth, core.gridHeight, true);
+    }
+
+    /**
+     * Solve the cells [x0, x1) x [y0, y1) of the result grid on the solver pool.
+     * The region is split recursively into tiles, idle workers steal the
+     * remaining halves from busy ones.
+     */
+    void solveRegion(int x0, int y0, int x1, int y1, boolean approxOnly) {
+        if (x1 <= x0 || y1 <= y0) {
+            return;
+        }
+        Conversion conversion = new Conversion(core.inputImage, core.resultGrid, approxOnly, null, 0,
+                core.decisionRecordsFor(core.resultGrid), null);
+        tileTimings.clear();
+        long startTime = System.nanoTime();
+        getPool().invoke(new TileTask(conversion, x0, y0, x1, y1));
+        if (logTileTimings) {
+            logTileTimings(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Solve the whole grid in the background. Tiles are written into the grid
+     * as soon as they are finished, so the result can be drawn while the
+     * conversion runs. Cancelling the returned future stops the remaining
+     * tiles; the image and grid are captured, a later conversion never gets
+     * cells of a cancelled one.
+     */
+    CompletableFuture<ResultGlyph[][]> solveGridAsync(PImage image, ResultGlyph[][] grid) {
+        CompletableFuture<ResultGlyph[][]> future = new CompletableFuture<>();
+        return submit(new Conversion(image, grid, false, future, 0, core.decisionRecordsFor(grid), null));
+    }
+
+    /**
+     * Run a background conversion over its whole grid on the solver pool
+     */
+    private CompletableFuture<ResultGlyph[][]> submit(Conversion conversion) {
+        CompletableFuture<ResultGlyph[][]> future = conversion.future;
+        ResultGlyph[][] grid = conversion.grid;
+        int gridHeight = grid.length;
+        int gridWidth = gridHeight > 0 ? grid[0].length : 0;
+        currentConversion = conversion;
+
+        gridTask = getPool().submit(() -> {
+            tileTimings.clear();
+            long startTime = System.nanoTime();
+            try {
+                new TileTask(conversion, 0, 0, gridWidth, gridHeight).invoke();
+                if (logTileTimings && !future.isDone()) {
+                    logTileTimings(System.nanoTime() - startTime);
+                }
+                future.complete(grid);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
             }
         });
+        return future;
+    }
+
+    /**
+     * Wait until the tiles of the last background conversion have stopped,
+     * after it was cancelled; afterwards nothing writes into its grid or
+     * decision records any more
+     */
+    void awaitGridTask() {
+        ForkJoinTask<?> task = gridTask;
+        if (task != null) {
+            task.quietlyJoin();
+        }
+    }
+
+    /**
+     * Start a banded run (solveBandAsync per grid row): drops the tile timings
+     * of earlier runs
+     */
+    void beginBands() {
+        tileTimings.clear();
+        bandStartTime = System.nanoTime();
+    }
+
+    /**
+     * End a banded run after the last band was joined
+     */
+    void endBands() {
+        if (logTileTimings) {
+            logTileTimings(System.nanoTime() - bandStartTime);
+        }
+        tileTimings.clear();
+    }
+
+    /**
+     * Solve grid row gridY from a band image that holds only this row of
+     * blocks. Returns right away, join the task before the band is reused.
+     */
+    ForkJoinTask<Void> solveBandAsync(PImage band, ResultGlyph[][] grid, int gridY) {
+        Conversion conversion = new Conversion(band, grid, false, null, gridY, null, null);
+        return getPool().submit(new TileTask(conversion, 0, gridY, grid[gridY].length, gridY + 1));
+    }
+
+    /**
+     * Fraction (0..1) of the cells of the running background conversion that
+     * are solved, or -1 if none is running
+     */
+    public float getProgress() {
+        Conversion conversion = currentConversion;
+        if (conversion == null || conversion.future.isDone() || conversion.cellCount == 0) {
+            return -1;
+        }
+        return conversion.solvedCells.get() / (float) conversion.cellCount;
+    }
+
+    /**
+     * Solver pool, (re)created when the configured parallelism changed
+     */
+    private synchronized ForkJoinPool getPool() {
+        int wanted = Math.max(1, parallelism);
+        if (pool == null || pool.getParallelism() != wanted) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(wanted, solverThreadFactory, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * Summary of the last run: tile count, tile durations and busy time per
+     * worker, to spot load imbalance
+     */
+    private void logTileTimings(long wallNanos) {
+        List<TileTiming> timings = new ArrayList<>(tileTimings);
+        if (timings.isEmpty()) {
+            return;
+        }
+        long minNanos = Long.MAX_VALUE;
+        long maxNanos = 0;
+        long totalNanos = 0;
+        TileTiming slowest = null;
+        Map<String, Long> busyPerWorker = new TreeMap<>();
+        for (TileTiming timing : timings) {
+            minNanos = Math.min(minNanos, timing.nanos);
+            if (timing.nanos > maxNanos) {
+                maxNanos = timing.nanos;
+                slowest = timing;
+            }
+            totalNanos += timing.nanos;
+            busyPerWorker.merge(timing.worker, timing.nanos, Long::sum);
+        }
+        Logger.println(String.format("Solved %d tiles on %d workers in %.1f ms (tile min %.2f / avg %.2f / max %.2f ms)",
+                timings.size(), busyPerWorker.size(), wallNanos / 1e6, minNanos / 1e6,
+                totalNanos / 1e6 / timings.size(), maxNanos / 1e6));
+        Logger.println("Slowest tile: " + slowest);
+        for (Map.Entry<String, Long> entry : busyPerWorker.entrySet()) {
+            Logger.println(String.format("  %s busy %.1f ms", entry.getKey(), entry.getValue() / 1e6));
+        }
+    }
+
+    /**
+     * Input, target grid and cancellation state of one conversion run
+     */
+    private static class Conversion {
+        final PImage image;
+        final ResultGlyph[][] grid;
+        final boolean approxOnly;
+        final CompletableFuture<ResultGlyph[][]> future; // null for blocking runs
+        final int imageRow; // grid row of the first block row of the image (> 0 for bands)
+        final DecisionRecords records; // null if no records are kept
+        final boolean[] pending; // cells to solve (y * width + x), null for all
+        final int cellCount;
+        final AtomicInteger solvedCells = new AtomicInteger();
+
+        Conversion(PImage image, ResultGlyph[][] grid, boolean approxOnly, CompletableFuture<ResultGlyph[][]> future,
+                int imageRow, DecisionRecords records, boolean[] pending) {
+            this.image = image;
+            this.grid = grid;
+            this.approxOnly = approxOnly;
+            this.future = future;
+            this.imageRow = imageRow;
+            this.records = records;
+            this.pending = pending;
+            int count = grid.length > 0 ? grid.length * grid[0].length : 0;
+            if (pending != null) {
+                count = 0;
+                for (boolean cell : pending) {
+                    count += cell ? 1 : 0;
+                }
+            }
+            this.cellCount = count;
+        }
+
+        boolean isPending(int gridX, int gridY) {
+            if (pending == null) {
+                return true;
+            }
+            // A cell changed by hand while the remaining cells are solved keeps the edit
+            return pending[gridY * grid[0].length + gridX] && !records.isEdited(gridX, gridY);
+        }
+
+        boolean isCancelled() {
+            return future != null && future.isDone();
+        }
+    }
+
+    /**
+     * Solves a rectangle of grid cells, splitting it in half along the longer
+     * side until it is small enough
+     */
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Conversion conversion;
+        private final int x0, y0, x1, y1;
+
+        TileTask(Conversion conversion, int x0, int y0, int x1, int y1) {
+            this.conversion = conversion;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (conversion.isCancelled()) {
+                return;
+            }
+            int width = x1 - x0;
+            int height = y1 - y0;
+            if (width * height > maxTileCells) {
+                if (width >= height) {
+                    int mid = x0 + width / 2;
+                    invokeAll(new TileTask(conversion, x0, y0, mid, y1), new TileTask(conversion, mid, y0, x1, y1));
+                } else {
+                    int mid = y0 + height / 2;
+                    invokeAll(new TileTask(conversion, x0, y0, x1, mid), new TileTask(conversion, x0, mid, x1, y1));
+                }
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            MatchScratch scratch = MatchScratch.get();
+            DecisionRecords records = conversion.records;
+            startRecording(scratch, records);
+            int solved = 0;
+            for (int gridY = y0; gridY < y1; gridY++) {
+                for (int gridX = x0; gridX < x1; gridX++) {
+                    if (!conversion.isPending(gridX, gridY)) {
+                        continue;
+                    }
+                    int[] blockPixels = ProcessingCore.extractBlockPixels(conversion.image, gridX,
+                            gridY - conversion.imageRow, scratch.blockPixels);
+                    scratch.decisionRecord[DecisionRecords.STATE] = DecisionRecords.NONE;
+                    conversion.grid[gridY][gridX] = conversion.approxOnly ? findApproximateMatch(blockPixels, scratch)
+                            : solveBlock(blockPixels, scratch);
+                    if (records != null) {
+                        records.store(gridX, gridY, scratch.decisionRecord);
+                    }
+                    solved++;
+                }
+            }
+            scratch.recording = false;
+            conversion.solvedCells.addAndGet(solved);
+            core.invalidateCells(x0, y0, x1, y1);
+            if (logTileTimings) {
+                tileTimings.add(new TileTiming(x0, y0, width, height, System.nanoTime() - startTime,
+                        Thread.currentThread().getName()));
+            }
+        }
+    }
+
+    /**
+     * Duration of one solved tile
+     */
+    private static class TileTiming {
+        final int x, y, width, height;
+        final long nanos;
+        final String worker;
+
+        TileTiming(int x, int y, int width, int height, long nanos, String worker) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.nanos = nanos;
+            this.worker = worker;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d,%d %dx%d] %.2f ms on %s", x, y, width, height, nanos / 1e6, worker);
+        }
     }
 
     public void reprocessSelectedArea() {
@@ -63,24 +533,11 @@ public class  MultiThreadSolver {
         long startTime = System.currentTimeMillis();
 
         // Process only the selected blocks
-        IntStream.rangeClosed(minY, maxY).parallel().forEach(gridY -> {
-            for (int gridX = minX; gridX <= maxX; gridX++) {
-                int[] blockPixels = core.extractBlockPixels(gridX, gridY);
-
-                // Try to find an exact match first
-                ResultGlyph exactMatchResult = core.findExactMatch(blockPixels);
-                if (exactMatchResult != null) {
-                    core.resultGrid[gridY][gridX] = exactMatchResult;
-                    continue;
-                }
-
-                // Fall back to approximation if no exact match
-                core.resultGrid[gridY][gridX] = core.findApproximateMatch(blockPixels);
-            }
-        });
+        solveRegion(minX, minY, maxX + 1, maxY + 1, false);
 
         long endTime = System.currentTimeMillis();
         Logger.println("Selection reprocessing finished in " + (endTime - startTime) + " ms.");
+        logSolveStats();
 
     }
 }
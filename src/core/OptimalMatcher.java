@@ -0,0 +1,273 @@
+package core;
+
+import processing.core.PApplet;
+import ui.ControlPanel;
+
+/**
+ * Matcher that picks the colours per glyph instead of using the two dominant
+ * palette colours of the block.
+ *
+ * For a shape P with n1 set and n0 clear pixels, the best continuous colours
+ * are the means m1/m0 of the pixels under P and under ~P, and every other
+ * pair costs exactly n1*|fg - m1|^2 + n0*|bg - m0|^2 more:
+ *
+ * <pre>
+ * bound(P)      = Q - |S1|^2 / n1 - |S0|^2 / n0
+ * error(P, f, b) = Q - 2 f.S1 + n1 |f|^2 - 2 b.S0 + n0 |b|^2
+ * </pre>
+ *
+ * with Q the sum of the squared pixel values and S1/S0 the channel sums of
+ * both parts. S1 comes from per-row lookup tables per channel like in
+ * {@link BitmaskMatcher}, S0 is the block sum minus S1. A shape is skipped when
+ * its bound already exceeds the best error so far; otherwise both means are
+ * snapped to the nearest palette colour and the exact error is computed. All
+ * of it is integer math, bounds are compared multiplied by n1*n0.
+ *
+ * The plain glyph (fg at the mean under P) and the inverted glyph (colours
+ * swapped) give the same picture; with a light/dark preference only the one
+ * whose foreground is lighter/darker is taken. The threshold modes behave
+ * like their light/dark counterpart, there is no second colour assignment to
+ * compare against; the delta threshold is ignored (the "Th:" spinner is
+ * disabled and the tile cache keys leave it out, see
+ * {@link ControlPanel#thresholdApplies}).
+ *
+ * With {@link MultiThreadSolver#shapeCandidates} set, only the classes
+ * nearest to the block binarised at its mean brightness ({@link ShapeIndex})
+ * are scored, plus the blank class: under a light/dark preference none of the
+ * nearest classes may have a glyph in the preferred colour order, the blank
+ * glyph (one colour) is always taken. Without a blank glyph all classes are
+ * scored when no candidate was taken.
+ */
+public class OptimalMatcher {
+    private static final int CHANNEL_TABLE = 8 * 256;
+    // Means as multiply and shift: floor(sum / n) == sum * RECIPROCALS[n] >>> 21
+    // for every channel sum of a block (sum + n / 2 < 2^14, n <= 64)
+    private static final int RECIPROCAL_SHIFT = 21;
+    private static final long[] RECIPROCALS = new long[ProcessingCore.PIXEL_COUNT + 1];
+    static {
+        for (int n = 1; n < RECIPROCALS.length; n++) {
+            RECIPROCALS[n] = ((1L << RECIPROCAL_SHIFT) + n - 1) / n;
+        }
+    }
+
+    private final PApplet app;
+    private final GlyphClasses glyphClasses;
+    private final ShapeIndex shapeIndex;
+    // Class of the empty/full pattern, -1 if the glyph set has none
+    private final int blankClass;
+
+    public OptimalMatcher(PApplet app, GlyphClasses glyphClasses, ShapeIndex shapeIndex) {
+        this.app = app;
+        this.glyphClasses = glyphClasses;
+        this.shapeIndex = shapeIndex;
+        int blank = -1;
+        for (int c = 0; c < glyphClasses.size() && blank < 0; c++) {
+            long shape = glyphClasses.getShape(c);
+            if (shape == 0 || shape == -1L) {
+                blank = c;
+            }
+        }
+        this.blankClass = blank;
+    }
+
+    public ResultGlyph findMatch(int[] blockPixels) {
+        return findMatch(blockPixels, MatchScratch.get());
+    }
+
+    /**
+     * Same as findMatch(int[]), with the buffers of the calling thread
+     */
+    ResultGlyph findMatch(int[] blockPixels, MatchScratch scratch) {
+        int pixelCount = ProcessingCore.PIXEL_COUNT;
+        int totalAlpha = 0;
+        int sumR = 0, sumG = 0, sumB = 0;
+        long sumSq = 0;
+        for (int pixel : blockPixels) {
+            totalAlpha += ColorMath.alpha(pixel);
+            int r = ColorMath.red(pixel);
+            int g = ColorMath.green(pixel);
+            int b = ColorMath.blue(pixel);
+            sumR += r;
+            sumG += g;
+            sumB += b;
+            sumSq += r * r + g * g + b * b;
+        }
+        int avgAlpha = totalAlpha / blockPixels.length;
+
+        // Classes to score: all of them, or only the ones closest to the block
+        // binarised at its mean brightness
+        int classCount = glyphClasses.size();
+        int candidateCount = classCount;
+        int[] candidates = null;
+        int k = MultiThreadSolver.shapeCandidates;
+        if (k > 0 && k < classCount) {
+            long mask = 0;
+            int sumLuma = 299 * sumR + 587 * sumG + 114 * sumB;
+            for (int i = 0; i < pixelCount; i++) {
+                int pixel = blockPixels[i];
+                int luma = 299 * ColorMath.red(pixel) + 587 * ColorMath.green(pixel) + 114 * ColorMath.blue(pixel);
+                if (luma * pixelCount > sumLuma) {
+                    mask |= 1L << i;
+                }
+            }
+            scratch.ensureCandidates(k + 1, classCount);
+            candidates = scratch.candidateClasses;
+            candidateCount = shapeIndex.nearest(mask, k, candidates, scratch.candidateDistances,
+                    scratch.indexStack);
+            if (blankClass >= 0 && !contains(candidates, candidateCount, blankClass)) {
+                candidates[candidateCount++] = blankClass;
+            }
+        }
+
+        // Row tables per channel (red, green, blue one after another): channel
+        // sum of the pixels of every possible 8-bit row
+        int[] tables = scratch.channelRowSums;
+        for (int row = 0; row < 8; row++) {
+            int tableOffset = row * 256;
+            for (int bits = 1; bits < 256; bits++) {
+                int pixel = blockPixels[row * 8 + Integer.numberOfTrailingZeros(bits)];
+                int previous = tableOffset + (bits & (bits - 1));
+                int entry = tableOffset + bits;
+                tables[entry] = tables[previous] + ColorMath.red(pixel);
+                tables[CHANNEL_TABLE + entry] = tables[CHANNEL_TABLE + previous] + ColorMath.green(pixel);
+                tables[2 * CHANNEL_TABLE + entry] = tables[2 * CHANNEL_TABLE + previous] + ColorMath.blue(pixel);
+            }
+        }
+
+        boolean usePreference = ControlPanel.usePreference;
+        boolean preferBrightAsForeground = ControlPanel.algoPreference == ControlPanel.AlgoPreference.Light ||
+                ControlPanel.algoPreference == ControlPanel.AlgoPreference.Threshold_Light;
+
+        int bestCodePoint = 0;
+        int bestFgIndex = 0;
+        int bestBgIndex = 0;
+        long minError = Long.MAX_VALUE;
+        long bestKey = Long.MAX_VALUE;
+
+        while (true) {
+            for (int i = 0; i < candidateCount; i++) {
+                int c = candidates == null ? i : candidates[i];
+                long shape = glyphClasses.getShape(c);
+                int n1 = Long.bitCount(shape);
+                int n0 = pixelCount - n1;
+                int r1 = sumRows(tables, 0, shape);
+                int g1 = sumRows(tables, CHANNEL_TABLE, shape);
+                int b1 = sumRows(tables, 2 * CHANNEL_TABLE, shape);
+                int r0 = sumR - r1;
+                int g0 = sumG - g1;
+                int b0 = sumB - b1;
+
+                // Lower bound, multiplied by n1*n0 (an empty part has a zero sum and counts as 1)
+                if (minError != Long.MAX_VALUE) {
+                    long w1 = Math.max(n1, 1);
+                    long w0 = Math.max(n0, 1);
+                    long s1 = (long) r1 * r1 + (long) g1 * g1 + (long) b1 * b1;
+                    long s0 = (long) r0 * r0 + (long) g0 * g0 + (long) b0 * b0;
+                    if (sumSq * w1 * w0 - s1 * w0 - s0 * w1 > minError * w1 * w0) {
+                        continue;
+                    }
+                }
+
+                // Nearest palette colours to both means; an empty part takes the other colour
+                int fgIndex = n1 > 0 ? nearestToMean(r1, g1, b1, n1) : -1;
+                int bgIndex = n0 > 0 ? nearestToMean(r0, g0, b0, n0) : fgIndex;
+                if (fgIndex < 0) {
+                    fgIndex = bgIndex;
+                }
+                long error = sumSq
+                        - 2L * (ColorMath.paletteRed(fgIndex) * r1 + ColorMath.paletteGreen(fgIndex) * g1
+                                + ColorMath.paletteBlue(fgIndex) * b1)
+                        + (long) n1 * normSq(fgIndex)
+                        - 2L * (ColorMath.paletteRed(bgIndex) * r0 + ColorMath.paletteGreen(bgIndex) * g0
+                                + ColorMath.paletteBlue(bgIndex) * b0)
+                        + (long) n0 * normSq(bgIndex);
+
+                boolean takePlain = true;
+                boolean takeInverted = glyphClasses.getInvertedCodePoint(c) >= 0;
+                if (usePreference) {
+                    int fgBrightness = ColorMath.paletteBrightness(fgIndex);
+                    int bgBrightness = ColorMath.paletteBrightness(bgIndex);
+                    if (fgBrightness != bgBrightness) {
+                        takePlain = (fgBrightness > bgBrightness) == preferBrightAsForeground;
+                        takeInverted &= !takePlain;
+                    }
+                }
+
+                long plainKey = glyphClasses.getPlainRank(c) * 2L;
+                long invertedKey = glyphClasses.getInvertedRank(c) * 2L;
+                if (takePlain && isBetter(error, plainKey, minError, bestKey)) {
+                    minError = error;
+                    bestKey = plainKey;
+                    bestCodePoint = glyphClasses.getPlainCodePoint(c);
+                    bestFgIndex = fgIndex;
+                    bestBgIndex = bgIndex;
+                }
+                if (takeInverted && isBetter(error, invertedKey, minError, bestKey)) {
+                    minError = error;
+                    bestKey = invertedKey;
+                    bestCodePoint = glyphClasses.getInvertedCodePoint(c);
+                    bestFgIndex = bgIndex;
+                    bestBgIndex = fgIndex;
+                }
+            }
+            // Nothing taken among the candidates (glyph set without a blank
+            // glyph): score all classes instead of returning black on black
+            if (minError != Long.MAX_VALUE || candidates == null) {
+                break;
+            }
+            candidates = null;
+            candidateCount = classCount;
+        }
+
+        return new ResultGlyph(bestCodePoint, bestFgIndex, bestBgIndex, avgAlpha);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Channel sum of the set pixels of the pattern from the tables of one channel
+     */
+    private static int sumRows(int[] tables, int offset, long pattern) {
+        return tables[offset + (int) (pattern & 0xFF)]
+                + tables[offset + 256 + (int) ((pattern >>> 8) & 0xFF)]
+                + tables[offset + 512 + (int) ((pattern >>> 16) & 0xFF)]
+                + tables[offset + 768 + (int) ((pattern >>> 24) & 0xFF)]
+                + tables[offset + 1024 + (int) ((pattern >>> 32) & 0xFF)]
+                + tables[offset + 1280 + (int) ((pattern >>> 40) & 0xFF)]
+                + tables[offset + 1536 + (int) ((pattern >>> 48) & 0xFF)]
+                + tables[offset + 1792 + (int) (pattern >>> 56)];
+    }
+
+    /**
+     * Palette index nearest to the rounded mean colour sum / count
+     */
+    private int nearestToMean(int sumR, int sumG, int sumB, int count) {
+        int half = count / 2;
+        long reciprocal = RECIPROCALS[count];
+        int r = (int) ((sumR + half) * reciprocal >>> RECIPROCAL_SHIFT);
+        int g = (int) ((sumG + half) * reciprocal >>> RECIPROCAL_SHIFT);
+        int b = (int) ((sumB + half) * reciprocal >>> RECIPROCAL_SHIFT);
+        return ColorPalette.findNearestColorIndex(r << 16 | g << 8 | b, app);
+    }
+
+    private static int normSq(int paletteIndex) {
+        int r = ColorMath.paletteRed(paletteIndex);
+        int g = ColorMath.paletteGreen(paletteIndex);
+        int b = ColorMath.paletteBlue(paletteIndex);
+        return r * r + g * g + b * b;
+    }
+
+    /**
+     * Lower error wins, equal errors go to the lower tie-break key
+     */
+    private static boolean isBetter(long error, long key, long minError, long bestKey) {
+        return error < minError || (error == minError && key < bestKey);
+    }
+}
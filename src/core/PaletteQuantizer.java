@@ -0,0 +1,133 @@
+package core;
+
+import java.util.stream.IntStream;
+
+import logger.Logger;
+
+/**
+ * Dense RGB -> palette index lookup table.
+ *
+ * Every 24-bit RGB value gets its nearest palette index precomputed once, so
+ * quantizing a pixel becomes a single array read instead of a scan over the
+ * whole palette. The table is built cell by cell (8x8x8 RGB cubes): for each
+ * cell only palette entries that can possibly be nearest to some colour inside
+ * the cell are scanned, which keeps the build fast while producing exactly the
+ * same index as the full linear scan (lowest index wins on ties).
+ */
+public class PaletteQuantizer {
+    private static final int CELL_BITS = 3;
+    private static final int CELL_SIZE = 1 << CELL_BITS; // 8 values per channel
+    private static final int CELLS_PER_AXIS = 256 >> CELL_BITS; // 32 cells per channel
+
+    private final byte[] table = new byte[1 << 24]; // 16 MB, one entry per RGB value
+    private final int[] palR;
+    private final int[] palG;
+    private final int[] palB;
+
+    public PaletteQuantizer(int[] palette) {
+        if (palette.length > 256) {
+            throw new IllegalArgumentException("Palette too large for byte lookup table: " + palette.length);
+        }
+        palR = new int[palette.length];
+        palG = new int[palette.length];
+        palB = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            palR[i] = ColorMath.red(palette[i]);
+            palG[i] = ColorMath.green(palette[i]);
+            palB[i] = ColorMath.blue(palette[i]);
+        }
+
+        long startTime = System.currentTimeMillis();
+        IntStream.range(0, CELLS_PER_AXIS).parallel().forEach(this::buildRedSlab);
+        Logger.println("Palette lookup table built in " + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    /**
+     * Nearest palette index for the RGB part of a colour (alpha is ignored)
+     */
+    public int nearest(int rgbColor) {
+        return table[rgbColor & 0xFFFFFF] & 0xFF;
+    }
+
+    /**
+     * Fill all cells with the given red cell coordinate
+     */
+    private void buildRedSlab(int cellR) {
+        int[] candidates = new int[palR.length];
+        for (int cellG = 0; cellG < CELLS_PER_AXIS; cellG++) {
+            for (int cellB = 0; cellB < CELLS_PER_AXIS; cellB++) {
+                int candidateCount = collectCandidates(cellR, cellG, cellB, candidates);
+                fillCell(cellR, cellG, cellB, candidates, candidateCount);
+            }
+        }
+    }
+
+    /**
+     * Collect (in ascending index order) all palette entries whose closest point
+     * in the cell is not farther away than the best guaranteed distance of any
+     * entry. Only those can be the nearest colour for a value inside the cell.
+     */
+    private int collectCandidates(int cellR, int cellG, int cellB, int[] candidates) {
+        int loR = cellR << CELL_BITS, loG = cellG << CELL_BITS, loB = cellB << CELL_BITS;
+        int hiR = loR + CELL_SIZE - 1, hiG = loG + CELL_SIZE - 1, hiB = loB + CELL_SIZE - 1;
+
+        int bound = Integer.MAX_VALUE;
+        for (int i = 0; i < palR.length; i++) {
+            int maxDist = sq(farthest(palR[i], loR, hiR)) + sq(farthest(palG[i], loG, hiG))
+                    + sq(farthest(palB[i], loB, hiB));
+            if (maxDist < bound) {
+                bound = maxDist;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < palR.length; i++) {
+            int minDist = sq(closest(palR[i], loR, hiR)) + sq(closest(palG[i], loG, hiG))
+                    + sq(closest(palB[i], loB, hiB));
+            if (minDist <= bound) {
+                candidates[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    private void fillCell(int cellR, int cellG, int cellB, int[] candidates, int candidateCount) {
+        int loR = cellR << CELL_BITS, loG = cellG << CELL_BITS, loB = cellB << CELL_BITS;
+        for (int r = loR; r < loR + CELL_SIZE; r++) {
+            for (int g = loG; g < loG + CELL_SIZE; g++) {
+                for (int b = loB; b < loB + CELL_SIZE; b++) {
+                    int bestIndex = 0;
+                    int minDistSq = Integer.MAX_VALUE;
+                    for (int c = 0; c < candidateCount; c++) {
+                        int i = candidates[c];
+                        int distSq = sq(r - palR[i]) + sq(g - palG[i]) + sq(b - palB[i]);
+                        // strictly smaller keeps the lowest index on ties, like the linear scan
+                        if (distSq < minDistSq) {
+                            minDistSq = distSq;
+                            bestIndex = i;
+                        }
+                    }
+                    table[(r << 16) | (g << 8) | b] = (byte) bestIndex;
+                }
+            }
+        }
+    }
+
+    private static int closest(int value, int lo, int hi) {
+        if (value < lo) {
+            return lo - value;
+        }
+        if (value > hi) {
+            return value - hi;
+        }
+        return 0;
+    }
+
+    private static int farthest(int value, int lo, int hi) {
+        return Math.max(Math.abs(value - lo), Math.abs(value - hi));
+    }
+
+    private static int sq(int v) {
+        return v * v;
+    }
+}
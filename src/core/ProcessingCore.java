@@ -1,10 +1,12 @@
 package core;
 
 import java.io.File;
-import java.util.HashSet;
+import java.io.IOException;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinTask;
 
+import core.data.BandImageReader;
 import core.data.ProjectFileManager;
 import core.data.UscExportManager;
 import logger.Logger;
@@ -71,10 +73,24 @@ public class ProcessingCore extends PApplet {
     // --- Project ---
     public Project project;
 
+    // --- Grid Size ---
+    // Requested number of columns/rows (0 = not set); with neither set the image is fitted into the display area
+    public static int targetColumns = 0;
+    public static int targetRows = 0;
+    // One glyph per 8x8 pixels of the source image, no resizing
+    public static boolean nativeResolution = false;
+    // Decoded source pixels held at once by loadAndProcessImageInBands
+    public static long bandChunkPixels = 16L << 20;
+    // Ranked alternatives kept per cell for cycling with "flip glyph"
+    public static int alternativeCount = 16;
+
     // --- Display Variables ---
     public int displayAreaWidth = DEFAULT_DISPLAY_AREA_WIDTH;
     public int displayAreaHeight = DEFAULT_DISPLAY_AREA_HEIGHT;
     public int DISPLAY_SCALE = DEFAULT_DISPLAY_SCALE;
+    // Zoomed out below DISPLAY_SCALE 1: cells shown at 1/2, 1/4, 1/8 size in their average colour
+    public int zoomOutLevel = 0;
+    public static final int MAX_ZOOM_OUT_LEVEL = 3;
     public boolean showSourceImage = false;
     public int drawW, drawH;
     public int drawX, drawY;
@@ -82,6 +98,10 @@ public class ProcessingCore extends PApplet {
     // --- Font Pattern Variables ---
     public GlyphPatternGenerator patternGenerator;
     public Map<Integer, Long> asciiPatterns;
+    public GlyphTable glyphTable;
+    public ExactMatchIndex exactMatchIndex;
+    public BitmaskMatcher bitmaskMatcher;
+    public OptimalMatcher optimalMatcher;
     private String fontPath = ResourceLoader.getTempResourcePath(ResourceLoader.class, "unscii-8.ttf");
     private PFont unscii;
 
@@ -104,9 +124,26 @@ public class ProcessingCore extends PApplet {
     // Synchronization flag to avoid race conditions
     private volatile boolean isImageProcessing = false;
 
+    // Running background conversion (see loadAndProcessImageAsync)
+    private volatile CompletableFuture<ResultGlyph[][]> conversion;
+
     // --- Selection Variables ---
     // Hover selection
     MultiThreadSolver multiThreadSolver = new MultiThreadSolver(this);
+    // Exact vs approximate blocks of the current image
+    final MatchStats matchStats = new MatchStats();
+    // Counts of blocks solved outside a conversion (alternatives, serial solves), never logged
+    private final MatchStats uncountedStats = new MatchStats();
+    // Scored candidates per cell of resultGrid, for applying preference changes
+    volatile DecisionRecords decisionRecords;
+    // Ranked alternative glyphs per cell of resultGrid, filled on request
+    private AlternativeGlyphs alternatives;
+    // Glyph masks shared by the result view and the PNG export (16M mask pixels)
+    final GlyphAtlas glyphAtlas = new GlyphAtlas(16 << 20);
+    private final GlyphRenderer glyphRenderer = new GlyphRenderer(this, glyphAtlas);
+    // Frame skipping in draw()
+    private volatile boolean needsRedraw = true;
+    private long lastFrameSignature;
 
     private int mouseGridX = -1;
     private int mouseGridY = -1;
@@ -180,7 +217,15 @@ public class ProcessingCore extends PApplet {
 
     @Override
     public void draw() {
-        // TODO: dont draw when not needed.
+        // Skip the frame if nothing visible changed, the last frame stays on screen
+        long signature = frameSignature();
+        if (!needsRedraw && !isImageProcessing && signature == lastFrameSignature
+                && (resultGrid == null || !glyphRenderer.hasPendingChanges(resultGrid))) {
+            return;
+        }
+        needsRedraw = false;
+        lastFrameSignature = signature;
+
         image(getCheckerBoardImage(), 0, 0, width, height);
 
         // When image is processing, show a loading indicator
@@ -188,7 +233,9 @@ public class ProcessingCore extends PApplet {
             fill(128);
             textSize(24);
             textAlign(CENTER, CENTER);
-            text("Please wait...", width / 2, height / 2);
+            float progress = multiThreadSolver.getProgress();
+            text(progress >= 0 ? "Converting... " + (int) (progress * 100) + "%" : "Please wait...", width / 2,
+                    height / 2);
             // return; // Stop drawing until loading is complete
         }
 
@@ -201,6 +248,49 @@ public class ProcessingCore extends PApplet {
         }
     }
 
+    /**
+     * Hash of the view state draw() depends on
+     */
+    private long frameSignature() {
+        long h = 17;
+        int[] state = { width, height, mouseX, mouseY, drawX, drawY, DISPLAY_SCALE, zoomOutLevel,
+                showSourceImage ? 1 : 0, System.identityHashCode(resultGrid), System.identityHashCode(inputImage),
+                hasSelection ? 1 : 0, isSelecting ? 1 : 0, selectionStartX, selectionStartY, selectionEndX,
+                selectionEndY, clickedGridX, clickedGridY, isImageProcessing ? 1 : 0 };
+        for (int value : state) {
+            h = h * 31 + value;
+        }
+        return h;
+    }
+
+    /**
+     * Draw the next frame even if the view state looks unchanged
+     */
+    public void requestRedraw() {
+        needsRedraw = true;
+    }
+
+    /**
+     * Redraw one cell of the result view (after it was edited)
+     */
+    public void invalidateCell(int gridX, int gridY) {
+        glyphRenderer.invalidateCell(gridX, gridY);
+    }
+
+    /**
+     * Redraw the cells [x0, x1) x [y0, y1) of the result view
+     */
+    public void invalidateCells(int x0, int y0, int x1, int y1) {
+        glyphRenderer.invalidateRegion(x0, y0, x1, y1);
+    }
+
+    /**
+     * Redraw the whole result view
+     */
+    public void invalidateAllCells() {
+        glyphRenderer.invalidateAll();
+    }
+
     // ========== INITIALIZATION METHODS ==========
 
     /**
@@ -223,6 +313,24 @@ public class ProcessingCore extends PApplet {
         }
     }
 
+    /**
+     * (Re)build the match structures over the glyph table with the given
+     * tie-break policy
+     */
+    public void buildMatchers(GlyphClasses.TieBreak tieBreak) {
+        exactMatchIndex = new ExactMatchIndex(glyphTable, tieBreak);
+        GlyphClasses glyphClasses = new GlyphClasses(glyphTable, tieBreak);
+        ShapeIndex shapeIndex = new ShapeIndex(glyphClasses);
+        bitmaskMatcher = new BitmaskMatcher(this, glyphClasses, shapeIndex);
+        optimalMatcher = new OptimalMatcher(this, glyphClasses, shapeIndex);
+        // Cached tiles, decision records and alternatives were made with the old glyph set
+        multiThreadSolver.tileCache.clear();
+        decisionRecords = null;
+        alternatives = null;
+        Logger.println(glyphTable.size() + " glyphs in " + glyphClasses.size() + " shape classes (tie-break: "
+                + tieBreak + ", scorer: " + bitmaskMatcher.getScorerName() + ").");
+    }
+
     /**
      * Generate font patterns for ASCII art conversion
      */
@@ -239,6 +347,9 @@ public class ProcessingCore extends PApplet {
                 throw new RuntimeException("Pattern generation resulted in an empty map.");
             }
 
+            glyphTable = new GlyphTable(asciiPatterns);
+            buildMatchers(MultiThreadSolver.tieBreak);
+
             // Print a test pattern for 'A'
             int testCodePoint = 'A';
             Logger.println("\nPattern for U+" + String.format("%04X", testCodePoint) + " ('A'):");
@@ -314,7 +425,8 @@ public class ProcessingCore extends PApplet {
             return;
         }
 
-        loadAndProcessImage(imagePath);
+        // Image is loaded right away, the glyphs fill in while the conversion runs
+        loadAndProcessImageAsync(imagePath, null, false);
 
         if (imageLoadingState == ImageLoadingState.ERROR) {
             Logger.println("Error loading image. Exiting.");
@@ -335,144 +447,429 @@ public class ProcessingCore extends PApplet {
     }
 
     public ResultGlyph[][] loadAndProcessImage(String path, ResultGlyph[][] existingGrid, boolean forceReload) {
+        // A running background conversion would otherwise keep writing into the old grid
+        cancelConversion();
         try {
-            // Early exit if path is null or empty
-            if (path == null || path.isEmpty()) {
-                Logger.println("Invalid image path: null or empty");
-                imageLoadingState = ImageLoadingState.ERROR;
+            if (!prepareImage(path)) {
                 return null;
             }
 
-            // Activate image processing flag to manage render state
-            isImageProcessing = true;
-
-            // Show loading status
-            if(!headless){
-                fill(128);
-                textSize(24);
-                textAlign(CENTER, CENTER);
-                background(30);
-                text("Loading image...", width / 2, height / 2);
+            Logger.println("Starting ASCII conversion...");
+            long startTime = System.currentTimeMillis();
 
-                // Update the canvas to give immediate feedback
-                redraw();
+            if (canRestoreGrid(existingGrid, forceReload)) {
+                Logger.println("Restoring existing grid data...");
+                resultGrid = existingGrid;
+            } else {
+                multiThreadSolver.generateAsciiArtExact();
             }
-            inputImage = loadImage(path);
-            if (inputImage == null) {
-                Logger.println("Error loading image: " + path);
+
+            long endTime = System.currentTimeMillis();
+            Logger.println("Conversion finished in " + (endTime - startTime) + " ms.");
+            multiThreadSolver.logSolveStats();
+            imageLoadingState = ImageLoadingState.LOADED;
+
+            isImageProcessing = false;
+        } catch (Exception e) {
+            Logger.println("Error during image processing: " + e.getMessage());
+            e.printStackTrace();
+            isImageProcessing = false; // Important: Reset flag on error
+            imageLoadingState = ImageLoadingState.ERROR;
+            resultGrid = null;
+        } finally {
+            isImageProcessing = false;
+        }
+        return resultGrid;
+    }
+
+    /**
+     * Convert an image without ever holding it as a whole: it is decoded in
+     * bands of one glyph row, each band is resized and handed to the solver,
+     * and the next band is decoded while the previous one is solved. Peak heap
+     * is one decoded chunk (bandChunkPixels) and two bands. inputImage stays
+     * null, so there is no source view or selection reprocessing; meant for
+     * headless runs on very large images. Bands are resized with the box filter
+     * of BandImageReader, not PImage.resize, so the glyphs can differ slightly
+     * from loadAndProcessImage.
+     */
+    public ResultGlyph[][] loadAndProcessImageInBands(String path) {
+        cancelConversion();
+        isImageProcessing = true;
+        imageLoadingState = ImageLoadingState.LOADING;
+        long startTime = System.currentTimeMillis();
+        try (BandImageReader reader = new BandImageReader(new File(path))) {
+            int[] targetSize = targetImageSize(reader.getSourceWidth(), reader.getSourceHeight());
+            gridWidth = targetSize[0] / GLYPH_WIDTH;
+            gridHeight = targetSize[1] / GLYPH_HEIGHT;
+            if (gridWidth == 0 || gridHeight == 0) {
+                Logger.println("Image too small after resizing/cropping for an 8x8 grid.");
                 imageLoadingState = ImageLoadingState.ERROR;
-                isImageProcessing = false; // Important: Reset flag on error
                 return null;
             }
+            Logger.println("Decoding " + reader.getSourceWidth() + "x" + reader.getSourceHeight()
+                    + " in bands, grid size: " + gridWidth + "x" + gridHeight + " glyphs");
+            reader.setOutput(targetSize[0], targetSize[1], gridWidth * GLYPH_WIDTH, GLYPH_HEIGHT, bandChunkPixels);
 
-            // Prüfen, ob Bild Alpha-Kanal hat und sicherstellen, dass Schwarze Pixel nicht
-            // transparent sind
-            boolean hasAlphaChannel = false;
-            inputImage.loadPixels();
-
-            // Einfacher Test: Suche nach Pixeln mit nicht-255 Alpha
-            for (int i = 0; i < inputImage.pixels.length; i++) {
-                int alpha = (inputImage.pixels[i] >> 24) & 0xFF;
-                if (alpha != 255) {
-                    hasAlphaChannel = true;
-                    break;
+            inputImage = null;
+            resultGrid = new ResultGlyph[gridHeight][gridWidth];
+            resetSelectionState();
+
+            // Two bands: one is decoded while the solver works on the other
+            PImage[] bands = { new PImage(gridWidth * GLYPH_WIDTH, GLYPH_HEIGHT, ARGB),
+                    new PImage(gridWidth * GLYPH_WIDTH, GLYPH_HEIGHT, ARGB) };
+            ForkJoinTask<Void> solving = null;
+            multiThreadSolver.beginBands();
+            for (int gridY = 0; gridY < gridHeight; gridY++) {
+                PImage band = bands[gridY & 1];
+                reader.nextBand(band.pixels);
+                if (solving != null) {
+                    solving.join();
                 }
+                solving = multiThreadSolver.solveBandAsync(band, resultGrid, gridY);
+            }
+            if (solving != null) {
+                solving.join();
             }
+            multiThreadSolver.endBands();
 
-            Logger.println("Image loaded: " + path);
-            Logger.println("Image has alpha channel: " + (hasAlphaChannel ? "yes" : "no"));
+            Logger.println("Conversion finished in " + (System.currentTimeMillis() - startTime) + " ms.");
+            multiThreadSolver.logSolveStats();
+            imageLoadingState = ImageLoadingState.LOADED;
+        } catch (IOException e) {
+            Logger.println("Error loading image: " + path + " (" + e.getMessage() + ")");
+            imageLoadingState = ImageLoadingState.ERROR;
+            resultGrid = null;
+        } finally {
+            isImageProcessing = false;
+        }
+        return resultGrid;
+    }
 
-            // Wenn kein Alpha-Kanal erkannt wurde, stelle sicher, dass alle Pixel volle
-            // Deckkraft haben
-            if (!hasAlphaChannel) {
-                Logger.println("Ensuring all pixels have full opacity");
-                for (int i = 0; i < inputImage.pixels.length; i++) {
-                    // Setze Alpha auf voll opak (255)
-                    inputImage.pixels[i] = inputImage.pixels[i] | 0xFF000000;
-                }
-                inputImage.updatePixels();
+    /**
+     * Load an image and convert it in the background. Loading, resizing and
+     * cropping happen right away; the glyphs are solved on the solver pool and
+     * written into resultGrid tile by tile, so drawResult shows the image
+     * filling in. A running conversion is cancelled first.
+     *
+     * @return future completing with the grid, or with null if the image could
+     *         not be loaded
+     */
+    public CompletableFuture<ResultGlyph[][]> loadAndProcessImageAsync(String path, ResultGlyph[][] existingGrid,
+            boolean forceReload) {
+        cancelConversion();
+        try {
+            if (!prepareImage(path)) {
+                return CompletableFuture.completedFuture(null);
             }
+        } catch (Exception e) {
+            Logger.println("Error during image processing: " + e.getMessage());
+            e.printStackTrace();
+            imageLoadingState = ImageLoadingState.ERROR;
+            resultGrid = null;
+            isImageProcessing = false;
+            return CompletableFuture.completedFuture(null);
+        }
 
-            // Resize image to fit display area while maintaining aspect ratio
-            resizeImageForDisplay();
+        if (canRestoreGrid(existingGrid, forceReload)) {
+            Logger.println("Restoring existing grid data...");
+            resultGrid = existingGrid;
+            imageLoadingState = ImageLoadingState.LOADED;
+            isImageProcessing = false;
+            return CompletableFuture.completedFuture(resultGrid);
+        }
+        return startConversion();
+    }
 
-            // Ensure image dimensions are multiples of the glyph size
-            cropImageToFitGrid();
+    /**
+     * Decision records for solving into grid (kept while the grid stays the
+     * same), null in headless runs, when disabled or for grids above
+     * maxDecisionCells
+     */
+    synchronized DecisionRecords decisionRecordsFor(ResultGlyph[][] grid) {
+        int candidates = MultiThreadSolver.decisionCandidates;
+        if (headless || candidates <= 0 || grid == null) {
+            return null;
+        }
+        long cells = (long) grid.length * (grid.length > 0 ? grid[0].length : 0);
+        if (cells > MultiThreadSolver.maxDecisionCells) {
+            decisionRecords = null;
+            Logger.println("No decision records for " + cells + " cells (limit " + MultiThreadSolver.maxDecisionCells
+                    + "), preference changes apply to the next conversion.");
+            return null;
+        }
+        DecisionRecords records = decisionRecords;
+        if (records == null || records.grid != grid || records.candidates != candidates) {
+            records = new DecisionRecords(grid, candidates);
+            decisionRecords = records;
+        }
+        return records;
+    }
 
-            if (gridWidth == 0 || gridHeight == 0) {
-                Logger.println("Image too small after resizing/cropping for an 8x8 grid.");
-                imageLoadingState = ImageLoadingState.ERROR;
-                isImageProcessing = false; // Important: Reset flag on error
-                return null;
+    /**
+     * Keep a cell changed by hand out of later preference changes
+     */
+    void markEdited(int gridX, int gridY) {
+        DecisionRecords records = decisionRecords;
+        if (records != null && records.grid == resultGrid) {
+            records.markEdited(gridX, gridY);
+        }
+    }
+
+    /**
+     * Apply changed algorithm preferences (light/dark, threshold): decide the
+     * solved cells again from their decision records without scoring the
+     * glyphs; the cells the records cannot decide are solved in the background.
+     * A running conversion (or an earlier preference change) is stopped first,
+     * the cells it did not reach are solved with the rest.
+     */
+    public void applyPreferenceChange() {
+        if (resultGrid == null) {
+            return;
+        }
+        boolean wasConverting = isConverting();
+        cancelConversion();
+        multiThreadSolver.awaitGridTask();
+        CompletableFuture<ResultGlyph[][]> future = multiThreadSolver.redecideGrid();
+        if (future == null) {
+            // No records for this grid: only an interrupted conversion has to be redone
+            if (wasConverting && inputImage != null) {
+                resultGrid = new ResultGlyph[gridHeight][gridWidth];
+                startConversion();
             }
+            return;
+        }
+        requestRedraw();
+        if (!future.isDone()) {
+            trackConversion(future);
+        } else if (wasConverting) {
+            // The interrupted conversion had solved every cell already
+            isImageProcessing = false;
+            imageLoadingState = ImageLoadingState.LOADED;
+        }
+    }
 
-            // Create a new result grid array
-            resultGrid = new ResultGlyph[gridHeight][gridWidth];
+    /**
+     * Cancel a running background conversion and solve the current image again
+     * with the current settings (e.g. after the algorithm was changed mid-run).
+     * Does nothing if no conversion is running.
+     */
+    public void restartConversionIfRunning() {
+        if (!isConverting() || inputImage == null) {
+            return;
+        }
+        Logger.println("Settings changed, restarting conversion...");
+        cancelConversion();
+        resultGrid = new ResultGlyph[gridHeight][gridWidth];
+        startConversion();
+    }
 
-            Logger.println("Starting ASCII conversion...");
-            long startTime = System.currentTimeMillis();
+    /**
+     * Stop the running background conversion, cells solved so far stay in the
+     * grid
+     */
+    public void cancelConversion() {
+        CompletableFuture<ResultGlyph[][]> running = conversion;
+        conversion = null;
+        if (running != null && running.cancel(false)) {
+            Logger.println("Conversion cancelled.");
+        }
+    }
 
-            if (!forceReload && existingGrid != null && existingGrid.length == gridHeight
-                    && existingGrid[0].length == gridWidth) {
-                Logger.println("Restoring existing grid data...");
-                resultGrid = existingGrid;
+    public boolean isConverting() {
+        CompletableFuture<ResultGlyph[][]> running = conversion;
+        return running != null && !running.isDone();
+    }
+
+    /**
+     * Solve inputImage into resultGrid on the solver pool
+     */
+    private CompletableFuture<ResultGlyph[][]> startConversion() {
+        Logger.println("Starting ASCII conversion in background...");
+        return trackConversion(multiThreadSolver.solveGridAsync(inputImage, resultGrid));
+    }
+
+    /**
+     * Make future the running conversion: processing state until it
+     * completes, then log the result
+     */
+    private CompletableFuture<ResultGlyph[][]> trackConversion(CompletableFuture<ResultGlyph[][]> future) {
+        isImageProcessing = true;
+        imageLoadingState = ImageLoadingState.LOADING;
+        long startTime = System.currentTimeMillis();
+
+        conversion = future;
+        future.whenComplete((grid, error) -> {
+            // Superseded by a newer conversion, which owns the state now
+            if (conversion != future) {
+                return;
+            }
+            if (error != null) {
+                Logger.println("Error during image processing: " + error.getMessage());
+                imageLoadingState = ImageLoadingState.ERROR;
             } else {
-                multiThreadSolver.generateAsciiArtExact();
+                Logger.println("Conversion finished in " + (System.currentTimeMillis() - startTime) + " ms.");
+                multiThreadSolver.logSolveStats();
+                imageLoadingState = ImageLoadingState.LOADED;
             }
+            isImageProcessing = false;
+        });
+        return future;
+    }
 
-            long endTime = System.currentTimeMillis();
-            Logger.println("Conversion finished in " + (endTime - startTime) + " ms.");
-            imageLoadingState = ImageLoadingState.LOADED;
+    private boolean canRestoreGrid(ResultGlyph[][] existingGrid, boolean forceReload) {
+        return !forceReload && existingGrid != null && existingGrid.length == gridHeight
+                && existingGrid[0].length == gridWidth;
+    }
 
-            // Reset selection states
-            clickedGridX = -1;
-            clickedGridY = -1;
-            clickedGlyph = null;
-            mouseGridX = -1;
-            mouseGridY = -1;
-            selectedGlyph = null;
-            hasSelection = false;
-            selectionStartX = selectionStartY = selectionEndX = selectionEndY = -1;
+    /**
+     * Load the image, resize and crop it to the grid, and allocate an empty
+     * result grid. Resets the selection.
+     *
+     * @return false if the image could not be used (state is set to ERROR)
+     */
+    private boolean prepareImage(String path) {
+        // Early exit if path is null or empty
+        if (path == null || path.isEmpty()) {
+            Logger.println("Invalid image path: null or empty");
+            imageLoadingState = ImageLoadingState.ERROR;
+            return false;
+        }
 
-            if (controlPanel != null) {
-                controlPanel.updateClickedInfo(-1, -1, null, ColorPalette.getColors(), asciiPatterns);
-                controlPanel.updateSelectionInfo(-1, -1, null);
-            }
+        // Activate image processing flag to manage render state
+        isImageProcessing = true;
 
-            isImageProcessing = false;
-        } catch (Exception e) {
-            Logger.println("Error during image processing: " + e.getMessage());
-            e.printStackTrace();
+        // Show loading status
+        if(!headless){
+            fill(128);
+            textSize(24);
+            textAlign(CENTER, CENTER);
+            background(30);
+            text("Loading image...", width / 2, height / 2);
+
+            // Update the canvas to give immediate feedback
+            redraw();
+        }
+        inputImage = loadImage(path);
+        alternatives = null;
+        if (inputImage == null) {
+            Logger.println("Error loading image: " + path);
+            imageLoadingState = ImageLoadingState.ERROR;
             isImageProcessing = false; // Important: Reset flag on error
+            return false;
+        }
+
+        // Prüfen, ob Bild Alpha-Kanal hat und sicherstellen, dass Schwarze Pixel nicht
+        // transparent sind
+        boolean hasAlphaChannel = false;
+        inputImage.loadPixels();
+
+        // Einfacher Test: Suche nach Pixeln mit nicht-255 Alpha
+        for (int i = 0; i < inputImage.pixels.length; i++) {
+            int alpha = (inputImage.pixels[i] >> 24) & 0xFF;
+            if (alpha != 255) {
+                hasAlphaChannel = true;
+                break;
+            }
+        }
+
+        Logger.println("Image loaded: " + path);
+        Logger.println("Image has alpha channel: " + (hasAlphaChannel ? "yes" : "no"));
+
+        // Wenn kein Alpha-Kanal erkannt wurde, stelle sicher, dass alle Pixel volle
+        // Deckkraft haben
+        if (!hasAlphaChannel) {
+            Logger.println("Ensuring all pixels have full opacity");
+            for (int i = 0; i < inputImage.pixels.length; i++) {
+                // Setze Alpha auf voll opak (255)
+                inputImage.pixels[i] = inputImage.pixels[i] | 0xFF000000;
+            }
+            inputImage.updatePixels();
+        }
+
+        // Resize image to the requested grid size while maintaining aspect ratio
+        resizeImageForGrid();
+
+        // Ensure image dimensions are multiples of the glyph size
+        cropImageToFitGrid();
+
+        if (gridWidth == 0 || gridHeight == 0) {
+            Logger.println("Image too small after resizing/cropping for an 8x8 grid.");
             imageLoadingState = ImageLoadingState.ERROR;
-            resultGrid = null;
-        } finally {
-            isImageProcessing = false;
+            isImageProcessing = false; // Important: Reset flag on error
+            return false;
         }
-        return resultGrid;
+
+        // Create a new result grid array
+        resultGrid = new ResultGlyph[gridHeight][gridWidth];
+
+        resetSelectionState();
+        return true;
     }
 
     /**
-     * Resize image to fit display area while maintaining aspect ratio
+     * Clear hover, click and selection state (the grid was replaced)
      */
-    private void resizeImageForDisplay() {
-        float imgAspect = (float) inputImage.width / inputImage.height;
-        float targetAspect = (float) displayAreaWidth / displayAreaHeight;
-        int targetWidth, targetHeight;
+    private void resetSelectionState() {
+        clickedGridX = -1;
+        clickedGridY = -1;
+        clickedGlyph = null;
+        mouseGridX = -1;
+        mouseGridY = -1;
+        selectedGlyph = null;
+        hasSelection = false;
+        selectionStartX = selectionStartY = selectionEndX = selectionEndY = -1;
 
-        if (imgAspect > targetAspect) {
-            targetWidth = displayAreaWidth;
-            targetHeight = (int) (displayAreaWidth / imgAspect);
-        } else {
-            targetHeight = displayAreaHeight;
-            targetWidth = (int) (displayAreaHeight * imgAspect);
+        if (controlPanel != null) {
+            controlPanel.updateClickedInfo(-1, -1, null, ColorPalette.getColors(), asciiPatterns);
+            controlPanel.updateSelectionInfo(-1, -1, null);
         }
+    }
 
-        inputImage.resize(targetWidth, targetHeight);
-        inputImage.loadPixels();
+    /**
+     * Resize image to the target grid size while maintaining aspect ratio. The
+     * grid size is independent of the window: the image is fitted into
+     * targetColumns x targetRows glyphs (either may be unset), kept at its
+     * native resolution, or by default fitted into the display area.
+     */
+    private void resizeImageForGrid() {
+        int[] targetSize = targetImageSize(inputImage.width, inputImage.height);
+        int targetWidth = targetSize[0];
+        int targetHeight = targetSize[1];
+
+        // Resampling at the same size would only blur, and costs a full copy for large images
+        if (targetWidth != inputImage.width || targetHeight != inputImage.height) {
+            inputImage.resize(targetWidth, targetHeight);
+            inputImage.loadPixels();
+        }
 
         gridWidth = inputImage.width / GLYPH_WIDTH;
         gridHeight = inputImage.height / GLYPH_HEIGHT;
+        Logger.println("Grid size: " + gridWidth + "x" + gridHeight + " glyphs");
+    }
+
+    /**
+     * Size a source image of the given size is resized to before cropping,
+     * see resizeImageForGrid
+     */
+    private int[] targetImageSize(int sourceWidth, int sourceHeight) {
+        int boxWidth, boxHeight;
+        if (nativeResolution) {
+            boxWidth = sourceWidth;
+            boxHeight = sourceHeight;
+        } else if (targetColumns > 0 || targetRows > 0) {
+            boxWidth = targetColumns > 0 ? targetColumns * GLYPH_WIDTH : Integer.MAX_VALUE;
+            boxHeight = targetRows > 0 ? targetRows * GLYPH_HEIGHT : Integer.MAX_VALUE;
+        } else {
+            boxWidth = displayAreaWidth;
+            boxHeight = displayAreaHeight;
+        }
+
+        float imgAspect = (float) sourceWidth / sourceHeight;
+        float targetAspect = (float) boxWidth / boxHeight;
+        if (imgAspect > targetAspect) {
+            return new int[] { boxWidth, (int) (boxWidth / imgAspect) };
+        }
+        return new int[] { (int) (boxHeight * imgAspect), boxHeight };
     }
 
     /**
@@ -501,8 +898,8 @@ public class ProcessingCore extends PApplet {
             for (int gridX = 0; gridX < gridWidth; gridX++) {
                 int[] blockPixels = extractBlockPixels(gridX, gridY);
 
-                // Try to find an exact match first
-                ResultGlyph exactMatchResult = findExactMatch(blockPixels);
+                // Try to find an exact match first (not logged, see logSolveStats)
+                ResultGlyph exactMatchResult = findExactMatch(blockPixels, uncountedStats);
                 if (exactMatchResult != null) {
                     resultGrid[gridY][gridX] = exactMatchResult;
                     continue;
@@ -517,13 +914,28 @@ public class ProcessingCore extends PApplet {
                 Logger.println("Processed row " + (gridY + 1) + "/" + gridHeight);
             }
         }
+        invalidateAllCells();
     }
 
     /**
      * Extract block pixels from the source image
      */
     int[] extractBlockPixels(int gridX, int gridY) {
-        int[] blockPixels = new int[PIXEL_COUNT];
+        return extractBlockPixels(inputImage, gridX, gridY);
+    }
+
+    /**
+     * Extract block pixels from the given image (used by solver threads, which
+     * keep working on the image they were started with)
+     */
+    static int[] extractBlockPixels(PImage image, int gridX, int gridY) {
+        return extractBlockPixels(image, gridX, gridY, new int[PIXEL_COUNT]);
+    }
+
+    /**
+     * Extract block pixels into the given array (reused by the solver threads)
+     */
+    static int[] extractBlockPixels(PImage image, int gridX, int gridY, int[] blockPixels) {
         int startX = gridX * GLYPH_WIDTH;
         int startY = gridY * GLYPH_HEIGHT;
 
@@ -531,16 +943,8 @@ public class ProcessingCore extends PApplet {
             for (int x = 0; x < GLYPH_WIDTH; x++) {
                 int imgX = startX + x;
                 int imgY = startY + y;
-                int color = inputImage.pixels[imgY * inputImage.width + imgX];
+                int color = image.pixels[imgY * image.width + imgX];
                 blockPixels[y * GLYPH_WIDTH + x] = color;
-                // float r = red(color);
-                // float g = green(color);
-                // float b = blue(color);
-                // int alpha = (color >> 24) & 0xFF;
-                // if (r == 0 && b == 0 && g == 0 && alpha > 0) {
-                // float falpha = alpha(color);
-                // // Logger.println("black with non 0 alpha :) " + falpha + " : " + alpha);
-                // }
             }
         }
         return blockPixels;
@@ -569,9 +973,9 @@ public class ProcessingCore extends PApplet {
         double minError = Double.MAX_VALUE;
 
         // Iterate through all glyph patterns
-        for (Map.Entry<Integer, Long> entry : asciiPatterns.entrySet()) {
-            int currentCodePoint = entry.getKey();
-            long currentPattern = entry.getValue();
+        for (int g = 0; g < glyphTable.size(); g++) {
+            int currentCodePoint = glyphTable.getCodePoint(g);
+            long currentPattern = glyphTable.getPattern(g);
 
             // Calculate error for both color assignments
             double errorA = calculateMatchError(currentPattern, color1Index, color2Index, blockPixels);
@@ -579,8 +983,8 @@ public class ProcessingCore extends PApplet {
             double bestMatchError = Math.min(errorA, errorB);
             double errorDelta = Math.max(errorA, errorB) - Math.min(errorA, errorB);
 
-            int brightness1 = (int) calculateBrightness(ColorPalette.getColors()[color1Index]);
-            int brightness2 = (int) calculateBrightness(ColorPalette.getColors()[color2Index]);
+            int brightness1 = ColorMath.paletteBrightness(color1Index);
+            int brightness2 = ColorMath.paletteBrightness(color2Index);
 
             boolean usePreference = ControlPanel.usePreference;
             boolean useThreshold = ControlPanel.algoPreference == ControlPanel.AlgoPreference.Threshold_Light ||
@@ -668,77 +1072,23 @@ public class ProcessingCore extends PApplet {
                 Logger.println("Processed row " + (gridY + 1) + "/" + gridHeight);
             }
         }
+        invalidateAllCells();
     }
 
     /**
      * Calculate the error between a pattern with given colors and original pixels
      */
     double calculateMatchError(long pattern, int fgIndex, int bgIndex, int[] originalBlockPixels) {
-        double totalError = 0;
-        int fgColor = ColorPalette.getColors()[fgIndex];
-        int bgColor = ColorPalette.getColors()[bgIndex];
-
-        // Extract RGB components
-        float fgR = red(fgColor);
-        float fgG = green(fgColor);
-        float fgB = blue(fgColor);
-        float bgR = red(bgColor);
-        float bgG = green(bgColor);
-        float bgB = blue(bgColor);
-
-        // Calculate error for each pixel
+        long totalError = 0;
         for (int i = 0; i < PIXEL_COUNT; i++) {
-            boolean pixelOn = ((pattern >> i) & 1L) == 1L;
-
             // Use foreground or background color based on pattern
-            float simR = pixelOn ? fgR : bgR;
-            float simG = pixelOn ? fgG : bgG;
-            float simB = pixelOn ? fgB : bgB;
-
-            // Get original pixel color
-            int originalColor = originalBlockPixels[i];
-            float origR = red(originalColor);
-            float origG = green(originalColor);
-            float origB = blue(originalColor);
-
+            int simIndex = ((pattern >> i) & 1L) == 1L ? fgIndex : bgIndex;
             // Sum of squared differences per channel
-            totalError += (origR - simR) * (origR - simR) +
-                    (origG - simG) * (origG - simG) +
-                    (origB - simB) * (origB - simB);
+            totalError += ColorMath.distanceSqToPalette(originalBlockPixels[i], simIndex);
         }
-
         return totalError;
     }
 
-    /**
-     * Calculate perceived brightness of a color (using common formula)
-     * 
-     * @param color The color as an int
-     * @return Brightness value between 0 and 255
-     */
-    private float calculateBrightness(int color) {
-        // Extract RGB components
-        float r = red(color);
-        float g = green(color);
-        float b = blue(color);
-
-        // Calculate perceived brightness using standard formula
-        // (0.299*R + 0.587*G + 0.114*B)
-        return 0.299f * r + 0.587f * g + 0.114f * b;
-    }
-
-    /**
-     * Simulate a block of pixels using a pattern and colors
-     */
-    int[] simulateBlock(long pattern, int fgColor, int bgColor) {
-        int[] pixels = new int[PIXEL_COUNT];
-        for (int i = 0; i < PIXEL_COUNT; i++) {
-            boolean pixelOn = ((pattern >> i) & 1L) == 1L;
-            pixels[i] = pixelOn ? fgColor : bgColor;
-        }
-        return pixels;
-    }
-
     /**
      * Compare two blocks of pixels for exact equality
      */
@@ -754,8 +1104,21 @@ public class ProcessingCore extends PApplet {
     /**
      * Try to find an exact match for a block of pixels
      * With improved support for single-color blocks and alpha channel
+     *
+     * The raw pixels are checked first, without quantizing: a block with more
+     * than two distinct values, or with two values that are not exactly palette
+     * colors, can only match as a solid block (everything quantizes to one
+     * color). Photos leave after a few palette lookups, only blocks with two
+     * palette colors reach the glyph index.
      */
     ResultGlyph findExactMatch(int[] blockPixels) {
+        return findExactMatch(blockPixels, matchStats);
+    }
+
+    /**
+     * Same as findExactMatch(int[]), counting the outcome in the given stats
+     */
+    ResultGlyph findExactMatch(int[] blockPixels, MatchStats stats) {
         // Extrahiere den durchschnittlichen Alpha-Wert für Debug-Zwecke
         int totalAlpha = 0;
         for (int pixel : blockPixels) {
@@ -763,97 +1126,86 @@ public class ProcessingCore extends PApplet {
         }
         int avgAlpha = totalAlpha / blockPixels.length;
 
-        Set<Integer> uniqueIndices = new HashSet<>();
-        int[] quantizedIndices = new int[PIXEL_COUNT];
-
-        // Quantize pixels to palette indices
+        // Up to two distinct raw values and the shape mask of the first one
+        int rawA = blockPixels[0];
+        int rawB = rawA;
+        boolean hasB = false;
+        long maskA = 0L;
         for (int i = 0; i < PIXEL_COUNT; i++) {
-            int nearestIndex = ColorPalette.findNearestPaletteIndex(blockPixels[i], this);
-            uniqueIndices.add(nearestIndex);
-            quantizedIndices[i] = nearestIndex;
+            int pixel = blockPixels[i];
+            if (pixel == rawA) {
+                maskA |= 1L << i;
+            } else if (!hasB || pixel == rawB) {
+                rawB = pixel;
+                hasB = true;
+            } else {
+                // third raw color
+                return findSolidMatch(blockPixels, avgAlpha, stats);
+            }
         }
 
-        // Special case: Single-color block
-        if (uniqueIndices.size() == 1) {
-            int singleIndex = uniqueIndices.iterator().next();
-            // Find a solid block pattern (either all on or all off)
-
-            // Try to find either a completely filled or completely empty glyph
-            for (Map.Entry<Integer, Long> entry : asciiPatterns.entrySet()) {
-                long pattern = entry.getValue();
-                boolean isAllOn = pattern == -1L; // All bits set (all pixels on)
-                boolean isAllOff = pattern == 0L; // All bits clear (all pixels off)
-
-                if (isAllOn || isAllOff) {
-                    int codePoint = entry.getKey();
-                    // For solid blocks, we'll make both FG and BG the same color
-                    // Speichere Alpha-Wert für besseres Debugging
-                    return new ResultGlyph(codePoint, singleIndex, singleIndex, avgAlpha);
-                }
-            }
+        int indexA = ColorPalette.findNearestPaletteIndex(rawA, this);
+        int indexB = hasB ? ColorPalette.findNearestPaletteIndex(rawB, this) : indexA;
 
-            // If no solid pattern found, continue to normal matching process
-            // by finding a second color to use with the block
+        // Special case: Single-color block
+        if (indexA == indexB) {
+            return solidResult(indexA, avgAlpha, stats);
         }
 
-        // Exact match only possible with exactly 2 colors (or one color with special
-        // handling)
-        if (uniqueIndices.size() != 2) {
+        // Both raw values have to be exactly the palette colors
+        if (rawA != ColorPalette.getColors()[indexA] || rawB != ColorPalette.getColors()[indexB]) {
+            stats.countRejectedColors();
             return null;
         }
 
-        // Get the two unique colors
-        Integer[] indices = uniqueIndices.toArray(new Integer[0]);
-        int indexA = indices[0];
-        int indexB = indices[1];
-        int colorA = ColorPalette.getColors()[indexA];
-        int colorB = ColorPalette.getColors()[indexB];
-
-        // Try each glyph pattern
-        for (Map.Entry<Integer, Long> entry : asciiPatterns.entrySet()) {
-            int currentCodePoint = entry.getKey();
-            long currentPattern = entry.getValue();
-
-            // Try color combination A
-            boolean matchA = true;
-            for (int i = 0; i < PIXEL_COUNT; i++) {
-                boolean pixelOn = ((currentPattern >> i) & 1L) == 1L;
-                int simulatedQuantizedIndex = pixelOn ? indexA : indexB;
-                if (simulatedQuantizedIndex != quantizedIndices[i]) {
-                    matchA = false;
-                    break;
-                }
-            }
-
-            if (matchA) {
-                int[] simulatedExactA = simulateBlock(currentPattern, colorA, colorB);
-                if (compareBlocksExactly(blockPixels, simulatedExactA)) {
-                    // Alpha-Wert mit speichern
-                    return new ResultGlyph(currentCodePoint, indexA, indexB, avgAlpha);
-                }
-            }
+        // One probe with color A as foreground, one with color B as foreground.
+        // The glyph with the lower tie-break rank wins. Every glyph with this
+        // shape simulates exactly this block.
+        int ordinalA = exactMatchIndex.ordinalOf(maskA);
+        int ordinalB = exactMatchIndex.ordinalOf(~maskA);
+        if (ordinalA < 0 && ordinalB < 0) {
+            stats.countRejectedShape();
+            return null;
+        }
+        boolean useA = ordinalB < 0
+                || (ordinalA >= 0 && exactMatchIndex.getRank(ordinalA) < exactMatchIndex.getRank(ordinalB));
+        int fgIndex = useA ? indexA : indexB;
+        int bgIndex = useA ? indexB : indexA;
+        int codePoint = exactMatchIndex.getCodePoint(useA ? ordinalA : ordinalB);
 
-            // Try color combination B
-            boolean matchB = true;
-            for (int i = 0; i < PIXEL_COUNT; i++) {
-                boolean pixelOn = ((currentPattern >> i) & 1L) == 1L;
-                int simulatedQuantizedIndex = pixelOn ? indexB : indexA;
-                if (simulatedQuantizedIndex != quantizedIndices[i]) {
-                    matchB = false;
-                    break;
-                }
-            }
+        // Alpha-Wert mit speichern
+        stats.countExact();
+        return new ResultGlyph(codePoint, fgIndex, bgIndex, avgAlpha);
+    }
 
-            if (matchB) {
-                int[] simulatedExactB = simulateBlock(currentPattern, colorB, colorA);
-                if (compareBlocksExactly(blockPixels, simulatedExactB)) {
-                    // Alpha-Wert mit speichern
-                    return new ResultGlyph(currentCodePoint, indexB, indexA, avgAlpha);
-                }
+    /**
+     * Exact match of a block with more than two raw colors: only possible if all
+     * pixels quantize to the same palette color. Stops at the first pixel that
+     * does not.
+     */
+    private ResultGlyph findSolidMatch(int[] blockPixels, int avgAlpha, MatchStats stats) {
+        int index = ColorPalette.findNearestPaletteIndex(blockPixels[0], this);
+        for (int i = 1; i < PIXEL_COUNT; i++) {
+            if (ColorPalette.findNearestPaletteIndex(blockPixels[i], this) != index) {
+                stats.countRejectedColors();
+                return null;
             }
         }
+        return solidResult(index, avgAlpha, stats);
+    }
 
-        return null; // No exact match found
+    /**
+     * Use a completely filled glyph, for solid blocks FG and BG are the same
+     * color
+     */
+    private ResultGlyph solidResult(int index, int avgAlpha, MatchStats stats) {
+        int solidCodePoint = exactMatchIndex.getSolidCodePoint();
+        if (solidCodePoint >= 0) {
+            stats.countExact();
+            return new ResultGlyph(solidCodePoint, index, index, avgAlpha);
+        }
+        stats.countRejectedShape();
+        return null;
     }
 
     // ========== DRAWING METHODS ==========
@@ -876,8 +1228,8 @@ public class ProcessingCore extends PApplet {
         if (inputImage == null)
             return;
 
-        int cellWidth = GLYPH_WIDTH * DISPLAY_SCALE;
-        int cellHeight = GLYPH_HEIGHT * DISPLAY_SCALE;
+        int cellWidth = viewCellWidth();
+        int cellHeight = viewCellHeight();
         int totalGridWidthPixels = gridWidth * cellWidth;
         int totalGridHeightPixels = gridHeight * cellHeight;
 
@@ -910,41 +1262,24 @@ public class ProcessingCore extends PApplet {
             return;
         }
 
-        int cellWidth = GLYPH_WIDTH * DISPLAY_SCALE;
-        int cellHeight = GLYPH_HEIGHT * DISPLAY_SCALE;
+        int cellWidth = viewCellWidth();
+        int cellHeight = viewCellHeight();
 
         int totalGridWidthPixels = gridWidth * cellWidth;
         int totalGridHeightPixels = gridHeight * cellHeight;
         int gridOriginX = (width - totalGridWidthPixels) / 2 + drawX - width / 2;
         int gridOriginY = (height - totalGridHeightPixels) / 2 + drawY - height / 2;
 
-        // Draw all glyphs
-        for (int y = 0; y < gridHeight; y++) {
-            for (int x = 0; x < gridWidth; x++) {
-                // check for bounds
-                if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
-                    return;
-                }
-                ResultGlyph glyphInfo = null;
-                try {
-                    glyphInfo = resultGrid[y][x];
-                } catch (Exception e) {
-                    Logger.println("ArrayIndexOutOfBoundsException: " + e.getMessage());
-                    return;
-                }
-                if (glyphInfo == null) {
-                    return;
-                }
-
-                long pattern = asciiPatterns.getOrDefault(glyphInfo.codePoint, 0L);
-                int fgColor = ColorPalette.getColors()[glyphInfo.fgIndex];
-                int bgColor = ColorPalette.getColors()[glyphInfo.bgIndex];
-                int screenX = gridOriginX + x * cellWidth;
-                int screenY = gridOriginY + y * cellHeight;
-
-                // Verwende den im ResultGlyph gespeicherten Alpha-Wert
-                displayScaledGlyph(pattern, screenX, screenY, DISPLAY_SCALE, bgColor, fgColor, glyphInfo.alpha);
-            }
+        // Only the cells inside the window are rendered, into one pixel buffer that is blitted
+        int firstX = max(0, -gridOriginX / cellWidth);
+        int firstY = max(0, -gridOriginY / cellHeight);
+        int lastX = min(gridWidth, (width - gridOriginX + cellWidth - 1) / cellWidth);
+        int lastY = min(gridHeight, (height - gridOriginY + cellHeight - 1) / cellHeight);
+        if (firstX < lastX && firstY < lastY) {
+            PImage gridImage = glyphRenderer.render(resultGrid, glyphTable, DISPLAY_SCALE, zoomOutLevel, firstX,
+                    firstY, lastX, lastY);
+            image(gridImage, gridOriginX + glyphRenderer.getRegionX() * cellWidth,
+                    gridOriginY + glyphRenderer.getRegionY() * cellHeight);
         }
 
         // Handle hover highlight
@@ -958,106 +1293,24 @@ public class ProcessingCore extends PApplet {
         drawSelectionRectangle(gridOriginX, gridOriginY, cellWidth, cellHeight);
     }
 
-    public PGraphics getResultingImage(int SCALE) {
-        if (resultGrid == null) {
-
-            return null;
-        }
-        int cellWidth = GLYPH_WIDTH * SCALE;
-        int cellHeight = GLYPH_HEIGHT * SCALE;
-        
-        int totalGridWidthPixels = gridWidth * cellWidth;
-        int totalGridHeightPixels = gridHeight * cellHeight;
-        int gridOriginX = (width - totalGridWidthPixels) / 2 - width / 2;
-        int gridOriginY = (height - totalGridHeightPixels) / 2 - height / 2;
-        gridOriginX = 0;
-        gridOriginY = 0;
-
-        PGraphics result = createGraphics(totalGridWidthPixels, totalGridHeightPixels);
-        result.beginDraw();
-        // Draw all glyphs
-        for (int y = 0; y < gridHeight; y++) {
-            for (int x = 0; x < gridWidth; x++) {
-                // check for bounds
-                if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
-                    continue;
-                }
-                ResultGlyph glyphInfo = null;
-                try {
-                    glyphInfo = resultGrid[y][x];
-                } catch (Exception e) {
-                    Logger.println("ArrayIndexOutOfBoundsException: " + e.getMessage());
-                    continue;
-                }
-                if (glyphInfo == null) {
-                    continue;
-                }
-
-                long pattern = asciiPatterns.getOrDefault(glyphInfo.codePoint, 0L);
-                int fgColor = ColorPalette.getColors()[glyphInfo.fgIndex];
-                int bgColor = ColorPalette.getColors()[glyphInfo.bgIndex];
-                int screenX = gridOriginX + x * cellWidth;
-                int screenY = gridOriginY + y * cellHeight;
-
-                // Verwende den im ResultGlyph gespeicherten Alpha-Wert
-                displayScaledGlyph(pattern, screenX, screenY, SCALE, bgColor, fgColor, glyphInfo.alpha, result);
-            }
-        }
-        result.endDraw();
-        return result;
-    }
-
-    void displayScaledGlyph(long pattern, int screenX, int screenY, int pixelSize, int bgCol, int fgCol,
-            int alphaValue) {
-        displayScaledGlyph(pattern, screenX, screenY, pixelSize, bgCol, fgCol, alphaValue, null);
-    }
-
     /**
-     * Display a scaled glyph with the given pattern and colors
-     * Now with improved transparency support using alpha values
+     * Draw one row of the result grid (GLYPH_HEIGHT * scale lines) into a
+     * pixel buffer, starting at offset. Glyphs are copied from the atlas
+     * masks; transparent cells get a background of 0, unsolved cells are
+     * skipped.
      */
-    void displayScaledGlyph(long pattern, int screenX, int screenY, int pixelSize, int bgCol, int fgCol,
-            int alphaValue, PGraphics canvas) {
-        if(canvas == null){
-            noStroke();
-        } else {
-            canvas.noStroke();
-        }
-
-        // Prüfen, ob aufgrund des Alpha-Wertes der Hintergrund transparent gerendert
-        // werden soll
-        boolean useTransparentBackground = (alphaValue < 127);
-
-        for (int y = 0; y < GLYPH_HEIGHT; y++) {
-            for (int x = 0; x < GLYPH_WIDTH; x++) {
-                int bitIndex = y * GLYPH_WIDTH + x;
-                boolean pixelOn = ((pattern >> bitIndex) & 1L) == 1L;
-
-                // Set the fill color based on pattern and transparency setting
-                int pixelColor = -1;
-                boolean shouldDraw = true;
-
-                if (pixelOn) {
-                    pixelColor = fgCol;
-
-                } else {
-                    if (useTransparentBackground) {
-                        shouldDraw = false;
-                    } else {
-                        pixelColor = bgCol;
-                    }
-                }
-
-                if (shouldDraw) {
-                    if (canvas == null) {
-                        fill(pixelColor);
-                        rect(screenX + x * pixelSize, screenY + y * pixelSize, pixelSize, pixelSize);
-                    } else {
-                        canvas.fill(pixelColor);
-                        canvas.rect(screenX + x * pixelSize, screenY + y * pixelSize, pixelSize, pixelSize);
-                    }
-                }
+    public void drawResultRow(int gridY, int scale, int[] pixels, int offset, int stride) {
+        int cellWidth = GLYPH_WIDTH * scale;
+        ResultGlyph[] row = resultGrid[gridY];
+        for (int x = 0; x < row.length; x++) {
+            ResultGlyph glyphInfo = row[x];
+            if (glyphInfo == null) {
+                continue;
             }
+            long pattern = glyphTable.getPatternOrDefault(glyphInfo.codePoint, 0L);
+            int fgColor = ColorPalette.getColors()[glyphInfo.fgIndex];
+            glyphAtlas.drawGlyph(pixels, stride, offset + x * cellWidth, 0, scale, pattern, fgColor,
+                    GlyphRenderer.backgroundColor(glyphInfo));
         }
     }
 
@@ -1154,14 +1407,20 @@ public class ProcessingCore extends PApplet {
 
     @Override
     public void mousePressed() {
+        needsRedraw = true;
         clickStart = System.currentTimeMillis();
         startedDragging = false; // Reset dragging flag on new press
         isSelecting = false; // Reset selection drag flag
 
+        // Cells are still being solved, editing starts when the conversion is done
+        if (isConverting()) {
+            return;
+        }
+
         if (!showSourceImage && resultGrid != null) {
             // Calculate grid cell dimensions and origin
-            int cellWidth = GLYPH_WIDTH * DISPLAY_SCALE;
-            int cellHeight = GLYPH_HEIGHT * DISPLAY_SCALE;
+            int cellWidth = viewCellWidth();
+            int cellHeight = viewCellHeight();
             int totalGridWidthPixels = gridWidth * cellWidth;
             int totalGridHeightPixels = gridHeight * cellHeight;
             int gridOriginX = (width - totalGridWidthPixels) / 2 + drawX - width / 2;
@@ -1279,8 +1538,8 @@ public class ProcessingCore extends PApplet {
         if (isSelecting) {
             // --- Selection Logic ---
             // Calculate grid cell dimensions and origin (needed to find current grid cell)
-            int cellWidth = GLYPH_WIDTH * DISPLAY_SCALE;
-            int cellHeight = GLYPH_HEIGHT * DISPLAY_SCALE;
+            int cellWidth = viewCellWidth();
+            int cellHeight = viewCellHeight();
             int totalGridWidthPixels = gridWidth * cellWidth;
             int totalGridHeightPixels = gridHeight * cellHeight;
             int gridOriginX = (width - totalGridWidthPixels) / 2 + drawX - width / 2;
@@ -1304,6 +1563,7 @@ public class ProcessingCore extends PApplet {
 
     @Override
     public void mouseReleased() {
+        needsRedraw = true;
         Logger.print("Mouse released. ");
         if (isSelecting) {
             isSelecting = false; // Selection drag finished
@@ -1346,8 +1606,8 @@ public class ProcessingCore extends PApplet {
         // - Dragging didn't actually start (or was negligible)
         if (!hasSelection && !startedDragging && mouseButton == LEFT) {
             // Calculate grid cell dimensions and origin
-            int cellWidth = GLYPH_WIDTH * DISPLAY_SCALE;
-            int cellHeight = GLYPH_HEIGHT * DISPLAY_SCALE;
+            int cellWidth = viewCellWidth();
+            int cellHeight = viewCellHeight();
             int totalGridWidthPixels = gridWidth * cellWidth;
             int totalGridHeightPixels = gridHeight * cellHeight;
             int gridOriginX = (width - totalGridWidthPixels) / 2 + drawX - width / 2;
@@ -1383,28 +1643,39 @@ public class ProcessingCore extends PApplet {
 
     @Override
     public void mouseWheel(MouseEvent event) {
+        needsRedraw = true;
         float e = event.getCount();
-        int currentScale = DISPLAY_SCALE;
+        int targetScale = DISPLAY_SCALE;
+        int targetZoomOut = zoomOutLevel;
 
-        // Determine target scale based on scroll direction
-        int targetScale = currentScale;
+        // Below scale 1 the wheel steps through the zoomed out levels
         if (e < 0) { // Scroll Up / Zoom In
-            targetScale++;
+            if (targetZoomOut > 0) {
+                targetZoomOut--;
+            } else {
+                targetScale++;
+            }
         } else if (e > 0) { // Scroll Down / Zoom Out
-            targetScale--;
+            if (targetScale > 1) {
+                targetScale--;
+            } else {
+                targetZoomOut++;
+            }
         }
 
         // Clamp scale between 1 and 8
         targetScale = constrain(targetScale, 1, 8);
+        targetZoomOut = constrain(targetZoomOut, 0, MAX_ZOOM_OUT_LEVEL);
 
         // Apply the new scale if it changed
-        if (targetScale != currentScale) {
-            setDisplayScale(targetScale);
+        if (targetScale != DISPLAY_SCALE || targetZoomOut != zoomOutLevel) {
+            setViewZoom(targetScale, targetZoomOut);
         }
     }
 
     @Override
     public void keyPressed() {
+        needsRedraw = true;
         // Track spacebar down state
         if (key == ' ') {
             isSpacebarDown = true;
@@ -1430,6 +1701,7 @@ public class ProcessingCore extends PApplet {
 
     @Override
     public void keyPressed(KeyEvent event) {
+        needsRedraw = true;
         // Check if controlPanel exists and is in EDIT state
         if (controlPanel == null || controlPanel.getPanelState() != ControlPanel.PanelState.EDIT) {
             // return;
@@ -1543,6 +1815,10 @@ public class ProcessingCore extends PApplet {
             showSourceImage = !showSourceImage;
             Logger.println("Toggled view: " + (showSourceImage ? "Source Image" : "ASCII Art"));
         } else if (lowerK == 'p') {
+            if (isConverting()) {
+                Logger.println("Conversion still running, export not possible yet.");
+                return;
+            }
             File outputFile = UscExportManager.saveFile("Save Result");
             if (outputFile == null) {
                 Logger.println("No file selected for saving.");
@@ -1601,7 +1877,7 @@ public class ProcessingCore extends PApplet {
             int newCodePoint = (int) newChar;
 
             // Check if the new codepoint has a pattern available
-            if (asciiPatterns.containsKey(newCodePoint)) {
+            if (glyphTable.contains(newCodePoint)) {
                 // Erstelle eine neue Glyphe mit geändertem codePoint
                 ResultGlyph newGlyph = new ResultGlyph(
                         newCodePoint,
@@ -1669,7 +1945,7 @@ public class ProcessingCore extends PApplet {
     public void replaceClickedGlyphWithGlyph(ResultGlyph sourceGlyph) {
         if (clickedGlyph != null && clickedGridX >= 0 && clickedGridY >= 0 && sourceGlyph != null) {
             // Validate source glyph data (optional but recommended)
-            if (!asciiPatterns.containsKey(sourceGlyph.codePoint)) {
+            if (!glyphTable.contains(sourceGlyph.codePoint)) {
                 Logger.println("Error: Source glyph codepoint " + sourceGlyph.codePoint
                         + " not found in font patterns. Cannot replace.");
                 return;
@@ -1832,7 +2108,7 @@ public class ProcessingCore extends PApplet {
                 textSize(32);
                 textAlign(CENTER, CENTER);
                 text("Reloading...", width / 2, height / 2);
-                loadAndProcessImage(imagePath, null, true);
+                loadAndProcessImageAsync(imagePath, null, true);
             }
         } else {
             Logger.println("No image path set to reload.");
@@ -1859,8 +2135,8 @@ public class ProcessingCore extends PApplet {
             for (int gridX = minX; gridX <= maxX; gridX++) {
                 int[] blockPixels = extractBlockPixels(gridX, gridY);
 
-                // Try to find an exact match first
-                ResultGlyph exactMatchResult = findExactMatch(blockPixels);
+                // Try to find an exact match first (not logged, see logSolveStats)
+                ResultGlyph exactMatchResult = findExactMatch(blockPixels, uncountedStats);
                 if (exactMatchResult != null) {
                     resultGrid[gridY][gridX] = exactMatchResult;
                     continue;
@@ -1879,30 +2155,40 @@ public class ProcessingCore extends PApplet {
 
         long endTime = System.currentTimeMillis();
         Logger.println("Selection reprocessing finished in " + (endTime - startTime) + " ms.");
-
+        invalidateCells(minX, minY, maxX + 1, maxY + 1);
     }
 
     /**
      * Set the display scale for the ASCII art
      */
     private void setDisplayScale(int newScale) {
+        setViewZoom(newScale, 0);
+    }
+
+    /**
+     * Set display scale and zoomed out level, keeping the point under the mouse in place
+     */
+    private void setViewZoom(int newScale, int newZoomOutLevel) {
         newScale = constrain(newScale, 1, 8);
+        newZoomOutLevel = constrain(newZoomOutLevel, 0, MAX_ZOOM_OUT_LEVEL);
+        if (newZoomOutLevel > 0) {
+            newScale = 1;
+        }
 
-        if (newScale == DISPLAY_SCALE || resultGrid == null) {
+        if ((newScale == DISPLAY_SCALE && newZoomOutLevel == zoomOutLevel) || resultGrid == null) {
             if (controlPanel != null) {
                 controlPanel.updateScaleSelector(newScale);
             }
             DISPLAY_SCALE = newScale;
+            zoomOutLevel = newZoomOutLevel;
             return;
         }
 
-        int oldScale = DISPLAY_SCALE;
+        float oldScale = viewScale();
 
         // Calculate current grid and mouse positions
-        float oldCellW = GLYPH_WIDTH * oldScale;
-        float oldCellH = GLYPH_HEIGHT * oldScale;
-        float oldTotalW = gridWidth * oldCellW;
-        float oldTotalH = gridHeight * oldCellH;
+        float oldTotalW = gridWidth * (float) viewCellWidth();
+        float oldTotalH = gridHeight * (float) viewCellHeight();
         float oldGridOriginX = (width - oldTotalW) / 2f + drawX - width / 2f;
         float oldGridOriginY = (height - oldTotalH) / 2f + drawY - height / 2f;
 
@@ -1912,16 +2198,16 @@ public class ProcessingCore extends PApplet {
 
         // Apply new scale
         DISPLAY_SCALE = newScale;
-        Logger.println("Set display scale to: " + DISPLAY_SCALE);
+        zoomOutLevel = newZoomOutLevel;
+        Logger.println("Set display scale to: " + (zoomOutLevel > 0 ? "1/" + (1 << zoomOutLevel) : DISPLAY_SCALE));
 
         // Adjust drawing position to keep the point under the mouse unchanged
-        float newCellW = GLYPH_WIDTH * newScale;
-        float newCellH = GLYPH_HEIGHT * newScale;
-        float newTotalW = gridWidth * newCellW;
-        float newTotalH = gridHeight * newCellH;
+        float newScaleFactor = viewScale();
+        float newTotalW = gridWidth * (float) viewCellWidth();
+        float newTotalH = gridHeight * (float) viewCellHeight();
 
-        float newDrawX = mouseX - worldX * newScale - (width - newTotalW) / 2f + width / 2f;
-        float newDrawY = mouseY - worldY * newScale - (height - newTotalH) / 2f + height / 2f;
+        float newDrawX = mouseX - worldX * newScaleFactor - (width - newTotalW) / 2f + width / 2f;
+        float newDrawY = mouseY - worldY * newScaleFactor - (height - newTotalH) / 2f + height / 2f;
 
         drawX = round(newDrawX);
         drawY = round(newDrawY);
@@ -1932,6 +2218,27 @@ public class ProcessingCore extends PApplet {
         }
     }
 
+    /**
+     * Screen pixels per glyph pixel in the result view
+     */
+    float viewScale() {
+        return zoomOutLevel > 0 ? 1f / (1 << zoomOutLevel) : DISPLAY_SCALE;
+    }
+
+    /**
+     * Width of one grid cell on screen
+     */
+    int viewCellWidth() {
+        return zoomOutLevel > 0 ? GLYPH_WIDTH >> zoomOutLevel : GLYPH_WIDTH * DISPLAY_SCALE;
+    }
+
+    /**
+     * Height of one grid cell on screen
+     */
+    int viewCellHeight() {
+        return zoomOutLevel > 0 ? GLYPH_HEIGHT >> zoomOutLevel : GLYPH_HEIGHT * DISPLAY_SCALE;
+    }
+
     /**
      * Zentriert das aktuelle Bild im Anzeigefenster
      */
@@ -1982,11 +2289,10 @@ public class ProcessingCore extends PApplet {
     }
 
     /**
-     * Findet einen alternativen, oft invertierten Glyph-Match für den aktuell
-     * ausgewählten Block.
-     * Der Algorithmus versucht den am besten passenden Glyph zu finden, wobei der
-     * aktuell
-     * verwendete Glyph ausgeschlossen wird.
+     * Ersetzt den ausgewählten Glyph durch die nächste Alternative aus der
+     * Rangliste der Zelle (siehe {@link AlternativeGlyphs}). Wiederholtes
+     * Drücken geht die Liste der Reihe nach durch und beginnt am Ende wieder
+     * beim besten Match.
      * Wird vom ControlPanel aufgerufen.
      */
     public void invertGlyphPattern() {
@@ -1995,23 +2301,13 @@ public class ProcessingCore extends PApplet {
             return;
         }
 
-        // 1. Extrahiere den Original-Pixelblock aus dem Bild
-        int[] blockPixels = extractBlockPixels(clickedGridX, clickedGridY);
-        if (blockPixels == null) {
+        AlternativeGlyphs.Ranking ranking = alternativesFor(clickedGridX, clickedGridY);
+        if (ranking == null) {
             Logger.println("Fehler beim Extrahieren der Pixel für die Neuberechnung.");
             return;
         }
 
-        // 2. Erstelle eine Liste von Codepoints, die wir ausschließen wollen (aktueller
-        // Codepoint)
-        Set<Integer> excludedCodepoints = new HashSet<>();
-        excludedCodepoints.add(clickedGlyph.codePoint);
-
-        // 3. Führe einen optimierten Match durch, unter Ausschluss des aktuellen
-        // Glyphen
-        ResultGlyph newMatch = findBestMatchExcluding(blockPixels, excludedCodepoints);
-
-        // 4. Wenn ein neuer Match gefunden wurde, wende ihn an
+        ResultGlyph newMatch = ranking.after(clickedGlyph);
         if (newMatch != null) {
             // Erstelle und führe das Command aus
             GlyphChangeCommand cmd = new GlyphChangeCommand(this, clickedGridX, clickedGridY, newMatch);
@@ -2026,186 +2322,37 @@ public class ProcessingCore extends PApplet {
     }
 
     /**
-     * Findet den besten Glyph-Match für einen Block, unter Ausschluss bestimmter
-     * Codepoints.
-     * 
-     * @param blockPixels        Die Pixel des zu matchenden Blocks
-     * @param excludedCodepoints Eine Menge von Codepoints, die ausgeschlossen
-     *                           werden sollen
-     * @return Der beste gefundene Match als ResultGlyph, oder null wenn keiner
-     *         gefunden wurde
-     */
-    private ResultGlyph findBestMatchExcluding(int[] blockPixels, Set<Integer> excludedCodepoints) {
-        // 1. Versuche zuerst einen exakten Match zu finden
-        ResultGlyph exactMatch = findExactMatchExcluding(blockPixels, excludedCodepoints);
-        if (exactMatch != null) {
-            return exactMatch;
-        }
-
-        // 2. Sonst finde eine Approximation
-        return findApproximateMatchExcluding(blockPixels, excludedCodepoints);
-    }
-
-    /**
-     * Findet einen exakten Match für einen Block unter Ausschluss bestimmter
-     * Codepoints.
-     * Diese Methode ist eine Kopie von findExactMatch, aber mit Ausschluss-Logik.
+     * Rangliste der Alternativen einer Zelle, beim ersten Aufruf aus den
+     * Quellpixeln berechnet und behalten, solange Grid und Einstellungen
+     * dieselben bleiben.
+     * Null, wenn keine Quellpixel vorhanden sind.
      */
-    private ResultGlyph findExactMatchExcluding(int[] blockPixels, Set<Integer> excludedCodepoints) {
-        Set<Integer> uniqueIndices = new HashSet<>();
-        int[] quantizedIndices = new int[PIXEL_COUNT];
-
-        // Quantize pixels to palette indices
-        for (int i = 0; i < PIXEL_COUNT; i++) {
-            int nearestIndex = ColorPalette.findNearestPaletteIndex(blockPixels[i], this);
-            uniqueIndices.add(nearestIndex);
-            quantizedIndices[i] = nearestIndex;
-        }
-
-        // Exact match only possible with exactly 2 colors
-        if (uniqueIndices.size() != 2) {
+    private AlternativeGlyphs.Ranking alternativesFor(int gridX, int gridY) {
+        if (inputImage == null || resultGrid == null) {
             return null;
         }
-
-        // Get the two unique colors
-        Integer[] indices = uniqueIndices.toArray(new Integer[0]);
-        int indexA = indices[0];
-        int indexB = indices[1];
-        int colorA = ColorPalette.getColors()[indexA];
-        int colorB = ColorPalette.getColors()[indexB];
-
-        // Beste Übereinstimmung und Fehler speichern
-        int bestCodePoint = -1;
-        boolean bestIsCombinationA = true;
-        double bestError = Double.MAX_VALUE;
-
-        // Try each glyph pattern
-        for (Map.Entry<Integer, Long> entry : asciiPatterns.entrySet()) {
-            int currentCodePoint = entry.getKey();
-
-            // Überspringen, wenn dieser Codepoint ausgeschlossen werden soll
-            if (excludedCodepoints.contains(currentCodePoint)) {
-                continue;
-            }
-
-            long currentPattern = entry.getValue();
-
-            // Try color combination A
-            boolean matchA = true;
-            for (int i = 0; i < PIXEL_COUNT; i++) {
-                boolean pixelOn = ((currentPattern >> i) & 1L) == 1L;
-                int simulatedQuantizedIndex = pixelOn ? indexA : indexB;
-                if (simulatedQuantizedIndex != quantizedIndices[i]) {
-                    matchA = false;
-                    break;
-                }
-            }
-
-            double errorA = Double.MAX_VALUE;
-            if (matchA) {
-                int[] simulatedExactA = simulateBlock(currentPattern, colorA, colorB);
-                // Berechne den exakten Fehler für eine genauere Sortierung
-                errorA = ColorPalette.calculateColorDistance(blockPixels, simulatedExactA, this);
-
-                // Ist dies der beste Match bisher?
-                if (errorA < bestError) {
-                    bestError = errorA;
-                    bestCodePoint = currentCodePoint;
-                    bestIsCombinationA = true;
-                }
-            }
-
-            // Try color combination B
-            boolean matchB = true;
-            for (int i = 0; i < PIXEL_COUNT; i++) {
-                boolean pixelOn = ((currentPattern >> i) & 1L) == 1L;
-                int simulatedQuantizedIndex = pixelOn ? indexB : indexA;
-                if (simulatedQuantizedIndex != quantizedIndices[i]) {
-                    matchB = false;
-                    break;
-                }
-            }
-
-            double errorB = Double.MAX_VALUE;
-            if (matchB) {
-                int[] simulatedExactB = simulateBlock(currentPattern, colorB, colorA);
-                // Berechne den exakten Fehler für eine genauere Sortierung
-                errorB = ColorPalette.calculateColorDistance(blockPixels, simulatedExactB, this);
-
-                // Ist dies der beste Match bisher?
-                if (errorB < bestError) {
-                    bestError = errorB;
-                    bestCodePoint = currentCodePoint;
-                    bestIsCombinationA = false;
-                }
-            }
-        }
-
-        // Wenn wir einen Match gefunden haben, erstelle einen ResultGlyph
-        if (bestCodePoint != -1) {
-            return bestIsCombinationA
-                    ? new ResultGlyph(bestCodePoint, indexA, indexB)
-                    : new ResultGlyph(bestCodePoint, indexB, indexA);
+        AlternativeGlyphs cache = alternatives;
+        if (cache == null || cache.grid != resultGrid || cache.size != alternativeCount || !cache.isCurrent()) {
+            cache = new AlternativeGlyphs(resultGrid, alternativeCount);
+            alternatives = cache;
         }
-
-        return null; // No exact match found
-    }
-
-    /**
-     * Findet einen ungefähren Match für einen Block unter Ausschluss bestimmter
-     * Codepoints.
-     * Diese Methode ist eine modifizierte Version von findApproximateMatch.
-     */
-    private ResultGlyph findApproximateMatchExcluding(int[] blockPixels, Set<Integer> excludedCodepoints) {
-        // Find two dominant colors
-        int[] dominantIndices = ColorPalette.findDominantPaletteColors(blockPixels, this, PIXEL_COUNT);
-        int color1Index = dominantIndices[0];
-        int color2Index = dominantIndices[1];
-
-        // Find best character and color combination
-        int bestCodePoint = 0;
-        int bestFgIndex = color1Index;
-        int bestBgIndex = color2Index;
-        double minError = Double.MAX_VALUE;
-
-        // Iterate through all glyph patterns
-        for (Map.Entry<Integer, Long> entry : asciiPatterns.entrySet()) {
-            int currentCodePoint = entry.getKey();
-
-            // Überspringe ausgeschlossene Codepoints
-            if (excludedCodepoints.contains(currentCodePoint)) {
-                continue;
-            }
-
-            long currentPattern = entry.getValue();
-
-            // Calculate error for both color assignments
-            double errorA = calculateMatchError(currentPattern, color1Index, color2Index, blockPixels);
-            double errorB = calculateMatchError(currentPattern, color2Index, color1Index, blockPixels);
-
-            // Update best match
-            if (errorA < minError) {
-                minError = errorA;
-                bestCodePoint = currentCodePoint;
-                bestFgIndex = color1Index;
-                bestBgIndex = color2Index;
-            }
-
-            if (errorB < minError) {
-                minError = errorB;
-                bestCodePoint = currentCodePoint;
-                bestFgIndex = color2Index;
-                bestBgIndex = color1Index;
+        AlternativeGlyphs.Ranking ranking = cache.get(gridX, gridY);
+        if (ranking == null) {
+            MatchScratch scratch = MatchScratch.get();
+            int[] blockPixels = extractBlockPixels(inputImage, gridX, gridY, scratch.blockPixels);
+            // The solver's own result comes first, with OPTIMAL colours or a
+            // preference it need not be among the ranked dominant-colour glyphs
+            ResultGlyph solved = findExactMatch(blockPixels, uncountedStats);
+            if (solved == null) {
+                solved = multiThreadSolver.findApproximateMatch(blockPixels, scratch);
             }
+            long pattern = glyphTable.getPatternOrDefault(solved.codePoint, 0L);
+            int error = (int) calculateMatchError(pattern, solved.fgIndex, solved.bgIndex, blockPixels);
+            ranking = bitmaskMatcher.rankAlternatives(blockPixels, Math.max(alternativeCount, 1), scratch)
+                    .startingWith(solved, error);
+            cache.put(gridX, gridY, ranking);
         }
-
-        // Wenn kein Match gefunden wurde (alle Codepoints ausgeschlossen), gib null
-        // zurück
-        if (excludedCodepoints.contains(bestCodePoint)) {
-            return null;
-        }
-
-        return new ResultGlyph(bestCodePoint, bestFgIndex, bestBgIndex);
+        return ranking;
     }
 
     /**
@@ -2315,7 +2462,7 @@ public class ProcessingCore extends PApplet {
         int newCodePoint = (int) newChar;
 
         // Check if the new codepoint has a pattern available
-        if (!asciiPatterns.containsKey(newCodePoint)) {
+        if (!glyphTable.contains(newCodePoint)) {
             Logger.println("Error: Character '" + newChar + "' (Codepoint: " + newCodePoint
                     + ") not found in font patterns. Cannot replace.");
             return;
@@ -2408,7 +2555,7 @@ public class ProcessingCore extends PApplet {
         }
 
         // Validate source glyph data
-        if (!asciiPatterns.containsKey(sourceGlyph.codePoint)) {
+        if (!glyphTable.contains(sourceGlyph.codePoint)) {
             Logger.println("Error: Source glyph codepoint " + sourceGlyph.codePoint
                     + " not found in font patterns. Cannot replace.");
             return;
@@ -2517,17 +2664,11 @@ public class ProcessingCore extends PApplet {
             if (glyph == null)
                 return false;
 
-            // Extract the original pixel block
-            int[] blockPixels = extractBlockPixels(x, y);
-            if (blockPixels == null)
+            // Next entry of the cell's ranked alternatives
+            AlternativeGlyphs.Ranking ranking = alternativesFor(x, y);
+            if (ranking == null)
                 return false;
-
-            // Create exclusion set for the current glyph
-            Set<Integer> excludedCodepoints = new HashSet<>();
-            excludedCodepoints.add(glyph.codePoint);
-
-            // Try to find a better match excluding the current glyph
-            ResultGlyph newMatch = findBestMatchExcluding(blockPixels, excludedCodepoints);
+            ResultGlyph newMatch = ranking.after(glyph);
             if (newMatch != null) {
                 GlyphChangeCommand cmd = new GlyphChangeCommand(this, x, y, newMatch);
                 compositeCommand.addCommand(cmd);
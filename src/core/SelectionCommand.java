@@ -50,6 +50,7 @@ public class SelectionCommand implements Command {
         processingCore.selectionStartY = newStartY;
         processingCore.selectionEndX = newEndX;
         processingCore.selectionEndY = newEndY;
+        processingCore.requestRedraw();
 
         // Update selection info in control panel
         if (processingCore.controlPanel != null) {
@@ -75,6 +76,7 @@ public class SelectionCommand implements Command {
         processingCore.selectionStartY = oldStartY;
         processingCore.selectionEndX = oldEndX;
         processingCore.selectionEndY = oldEndY;
+        processingCore.requestRedraw();
 
         // Update selection info in control panel for the undone selection
         if (processingCore.controlPanel != null) {
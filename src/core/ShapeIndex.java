@@ -0,0 +1,150 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * BK-tree over the shapes of a {@link GlyphClasses}, for finding the shape
+ * classes closest to a binarised block.
+ *
+ * The distance of two shapes is min(h, 64 - h) with h the Hamming distance of
+ * their patterns: a class also stands for the inverted shape, and inverting
+ * one side turns h into 64 - h. This is still a metric, so the usual BK-tree
+ * pruning applies: below a node at distance d from the query, a child on edge
+ * e can only hold shapes at distance |d - e| or more.
+ *
+ * The tree is stored in flat arrays (first child / next sibling), built once
+ * per glyph set. Queries use caller supplied buffers, so the matchers can keep
+ * them in {@link MatchScratch}.
+ */
+public class ShapeIndex {
+    private final long[] shapes;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] edgeDistance;
+
+    public ShapeIndex(GlyphClasses glyphClasses) {
+        int count = glyphClasses.size();
+        shapes = new long[count];
+        for (int c = 0; c < count; c++) {
+            shapes[c] = glyphClasses.getShape(c);
+        }
+        firstChild = new int[count];
+        nextSibling = new int[count];
+        edgeDistance = new int[count];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        // class 0 is the root, the others are inserted in class order
+        for (int c = 1; c < count; c++) {
+            insert(c);
+        }
+    }
+
+    private void insert(int c) {
+        int node = 0;
+        while (true) {
+            int d = distance(shapes[node], shapes[c]);
+            int child = firstChild[node];
+            while (child >= 0 && edgeDistance[child] != d) {
+                child = nextSibling[child];
+            }
+            if (child < 0) {
+                edgeDistance[c] = d;
+                nextSibling[c] = firstChild[node];
+                firstChild[node] = c;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    public int size() {
+        return shapes.length;
+    }
+
+    /**
+     * Distance of two shapes, the inverted shape counts as the same
+     */
+    public static int distance(long shapeA, long shapeB) {
+        int h = Long.bitCount(shapeA ^ shapeB);
+        return Math.min(h, 64 - h);
+    }
+
+    /**
+     * Indices of the k classes closest to the mask, in no particular order.
+     * Of several classes at the same distance as the k-th one, only some may
+     * be returned.
+     *
+     * @param classes   receives the class indices, at least k long
+     * @param distances work buffer, at least k long
+     * @param stack     work buffer, at least size() long
+     * @return the number of classes written, min(k, size())
+     */
+    public int nearest(long mask, int k, int[] classes, int[] distances, int[] stack) {
+        k = Math.min(k, shapes.length);
+        if (k <= 0) {
+            return 0;
+        }
+        // classes/distances hold a max-heap on distance of the best k so far
+        int found = 0;
+        int radius = Integer.MAX_VALUE;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int d = distance(mask, shapes[node]);
+            if (found < k) {
+                siftUp(classes, distances, found++, node, d);
+                if (found == k) {
+                    radius = distances[0];
+                }
+            } else if (d < radius) {
+                siftDown(classes, distances, k, node, d);
+                radius = distances[0];
+            }
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (Math.abs(d - edgeDistance[child]) < radius || found < k) {
+                    stack[top++] = child;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void siftUp(int[] classes, int[] distances, int position, int c, int d) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (distances[parent] >= d) {
+                break;
+            }
+            classes[position] = classes[parent];
+            distances[position] = distances[parent];
+            position = parent;
+        }
+        classes[position] = c;
+        distances[position] = d;
+    }
+
+    /**
+     * Replace the root (the largest distance) and restore the heap
+     */
+    private static void siftDown(int[] classes, int[] distances, int size, int c, int d) {
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[child] <= d) {
+                break;
+            }
+            classes[position] = classes[child];
+            distances[position] = distances[child];
+            position = child;
+        }
+        classes[position] = c;
+        distances[position] = d;
+    }
+}
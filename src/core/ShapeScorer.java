@@ -0,0 +1,86 @@
+package core;
+
+import logger.Logger;
+
+/**
+ * Computes S(P) of every shape class of a {@link GlyphClasses} from the eight
+ * per-row tables of {@link BitmaskMatcher}.
+ *
+ * The scalar scorer reads eight table entries per class. When the JDK Vector
+ * API is available (jdk.incubator.vector added to the boot layer and the
+ * classes of src-vector compiled), {@link #create} loads VectorShapeScorer,
+ * which gathers the rows of several classes per instruction. Both produce the
+ * same sums, so the matcher picks the same glyph either way.
+ */
+abstract class ShapeScorer {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_SCORER = "core.VectorShapeScorer";
+
+    protected final long[] shapes;
+
+    protected ShapeScorer(long[] shapes) {
+        this.shapes = shapes;
+    }
+
+    /**
+     * Vector scorer if enabled and available, otherwise the scalar one
+     */
+    static ShapeScorer create(long[] shapes, boolean allowVector) {
+        if (allowVector && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                Class<?> type = Class.forName(VECTOR_SCORER);
+                return (ShapeScorer) type.getDeclaredConstructor(long[].class).newInstance((Object) shapes);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Logger.println("Vector scorer not available (" + e + "), using the scalar one.");
+            }
+        }
+        return new Scalar(shapes);
+    }
+
+    int size() {
+        return shapes.length;
+    }
+
+    /**
+     * Write S of every class into sums[0..size), rowSums holds the eight
+     * 256-entry row tables back to back
+     */
+    abstract void score(int[] rowSums, int[] sums);
+
+    abstract String getName();
+
+    /**
+     * Eight table reads per class
+     */
+    static final class Scalar extends ShapeScorer {
+        Scalar(long[] shapes) {
+            super(shapes);
+        }
+
+        @Override
+        void score(int[] rowSums, int[] sums) {
+            for (int c = 0; c < shapes.length; c++) {
+                sums[c] = scoreShape(rowSums, shapes[c]);
+            }
+        }
+
+        @Override
+        String getName() {
+            return "scalar";
+        }
+    }
+
+    /**
+     * S of a single pattern
+     */
+    static int scoreShape(int[] rowSums, long pattern) {
+        return rowSums[(int) (pattern & 0xFF)]
+                + rowSums[256 + (int) ((pattern >>> 8) & 0xFF)]
+                + rowSums[512 + (int) ((pattern >>> 16) & 0xFF)]
+                + rowSums[768 + (int) ((pattern >>> 24) & 0xFF)]
+                + rowSums[1024 + (int) ((pattern >>> 32) & 0xFF)]
+                + rowSums[1280 + (int) ((pattern >>> 40) & 0xFF)]
+                + rowSums[1536 + (int) ((pattern >>> 48) & 0xFF)]
+                + rowSums[1792 + (int) (pattern >>> 56)];
+    }
+}
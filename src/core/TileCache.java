@@ -0,0 +1,200 @@
+package core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import ui.ControlPanel;
+
+/**
+ * Bounded LRU cache from the content of an 8x8 block to its solved glyph.
+ *
+ * UI mockups, screenshots and pixel art repeat the same blocks (fills,
+ * borders, icons) many times, within one image and across images of a batch.
+ * The key is the 64 ARGB pixels plus every setting that changes the result
+ * (preference, threshold where it applies, approximation algorithm,
+ * tie-break), so a lookup never returns a glyph solved under other settings.
+ *
+ * The cache is split into independently locked segments so the solver threads
+ * rarely wait on each other; every segment is an access-ordered LinkedHashMap
+ * that drops its least recently used entry when full. Glyphs are copied on the
+ * way in and out because grid cells are edited in place.
+ */
+public class TileCache {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TileCache(int maxEntries) {
+        int perSegment = Math.max(1, maxEntries / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Key for a block under the current algorithm settings
+     */
+    public static BlockKey keyFor(int[] blockPixels) {
+        return new BlockKey().set(blockPixels.clone());
+    }
+
+    /**
+     * Cached glyph for the key (a copy), or null if the block was not solved yet
+     */
+    public ResultGlyph get(BlockKey key) {
+        Segment segment = segmentFor(key);
+        ResultGlyph glyph;
+        synchronized (segment) {
+            glyph = segment.get(key);
+        }
+        if (glyph == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return glyph.copy();
+    }
+
+    public void put(BlockKey key, ResultGlyph glyph) {
+        if (glyph == null) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, glyph.copy());
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        resetStats();
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Segment segmentFor(BlockKey key) {
+        return segments[(key.hash >>> 28) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static class Segment extends LinkedHashMap<BlockKey, ResultGlyph> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BlockKey, ResultGlyph> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    /**
+     * Block pixels together with the settings that influence the result.
+     * Keys stored in the cache own a copy of the pixels; a probe key (see
+     * MatchScratch) is re-pointed at a scratch block for every lookup and only
+     * its copy() is ever stored.
+     */
+    public static final class BlockKey {
+        private int[] pixels;
+        private int settings;
+        private int shapeCandidates;
+        private double deltaThreshold;
+        private int hash;
+
+        private BlockKey() {
+        }
+
+        /**
+         * Empty key for lookups, set() before use
+         */
+        static BlockKey probe() {
+            return new BlockKey();
+        }
+
+        /**
+         * Point the key at the block (not copied) under the current settings
+         */
+        BlockKey set(int[] blockPixels) {
+            pixels = blockPixels;
+            settings = (ControlPanel.usePreference ? 1 : 0)
+                    | ControlPanel.algoPreference.ordinal() << 1
+                    | MultiThreadSolver.approxAlgorithm.ordinal() << 8
+                    | MultiThreadSolver.tieBreak.ordinal() << 16;
+            shapeCandidates = MultiThreadSolver.shapeCandidates;
+            deltaThreshold = ControlPanel.thresholdApplies() ? ControlPanel.algoDeltaThreshold : 0;
+
+            int h = Arrays.hashCode(pixels);
+            h = 31 * h + settings;
+            h = 31 * h + shapeCandidates;
+            h = 31 * h + Double.hashCode(deltaThreshold);
+            // spread the bits, the top bits select the segment
+            h *= 0x9E3779B9;
+            hash = h ^ (h >>> 16);
+            return this;
+        }
+
+        /**
+         * Key with its own copy of the pixels, safe to store
+         */
+        BlockKey copy() {
+            BlockKey key = new BlockKey();
+            key.pixels = pixels.clone();
+            key.settings = settings;
+            key.shapeCandidates = shapeCandidates;
+            key.deltaThreshold = deltaThreshold;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey key = (BlockKey) other;
+            return hash == key.hash && settings == key.settings && shapeCandidates == key.shapeCandidates
+                    && Double.compare(deltaThreshold, key.deltaThreshold) == 0
+                    && Arrays.equals(pixels, key.pixels);
+        }
+    }
+}
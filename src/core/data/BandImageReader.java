@@ -0,0 +1,213 @@
+package core.data;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes an image in horizontal bands with an ImageIO ImageReader and
+ * source regions, resized to a target size on the fly.
+ *
+ * Bands are produced top to bottom, bandHeight target lines at a time. The
+ * source is read in chunks of whole bands of at most chunkPixels decoded
+ * pixels, so the heap holds one chunk and a few bands instead of the full
+ * image. Most readers decode from the start of the file for every region, so
+ * chunks are as large as the budget allows to keep the number of reads low.
+ * When shrinking by 4x or more the source is subsampled while decoding; the
+ * remaining factor is an area average (box filter) over the source pixels of
+ * each target pixel.
+ */
+public class BandImageReader implements AutoCloseable {
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int sourceWidth;
+    private final int sourceHeight;
+
+    private int targetWidth, targetHeight;
+    private int outputWidth;
+    private int bandHeight;
+    private long chunkPixels;
+
+    // Source after subsampling while decoding
+    private int subsampling = 1;
+    private int subWidth, subHeight;
+    private int[] columnStart, columnEnd;
+
+    // Decoded rows [chunkStart, chunkEnd) of the subsampled source
+    private int[] chunk;
+    private int chunkStart, chunkEnd;
+    private int nextLine;
+
+    public BandImageReader(File file) throws IOException {
+        input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Cannot open " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("No image reader for " + file);
+        }
+        reader = readers.next();
+        reader.setInput(input, true, true);
+        sourceWidth = reader.getWidth(0);
+        sourceHeight = reader.getHeight(0);
+    }
+
+    /**
+     * Pixel count of the image from its header, -1 if it cannot be read
+     */
+    public static long pixelCount(String path) {
+        try (BandImageReader reader = new BandImageReader(new File(path))) {
+            return (long) reader.getSourceWidth() * reader.getSourceHeight();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /**
+     * Scale the source to targetWidth x targetHeight and return only the
+     * first outputWidth columns and outputLines lines of that (the crop to
+     * whole glyphs), in bands of bandHeight lines.
+     */
+    public void setOutput(int targetWidth, int targetHeight, int outputWidth, int bandHeight, long chunkPixels) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.outputWidth = outputWidth;
+        this.bandHeight = bandHeight;
+        this.chunkPixels = chunkPixels;
+
+        int shrink = Math.min(sourceWidth / targetWidth, sourceHeight / targetHeight);
+        subsampling = Math.max(1, shrink / 2); // keep about 2x2 samples per target pixel for the average
+        subWidth = (sourceWidth + subsampling - 1) / subsampling;
+        subHeight = (sourceHeight + subsampling - 1) / subsampling;
+
+        columnStart = new int[outputWidth];
+        columnEnd = new int[outputWidth];
+        for (int x = 0; x < outputWidth; x++) {
+            columnStart[x] = spanStart(x, subWidth, targetWidth);
+            columnEnd[x] = spanEnd(x, subWidth, targetWidth);
+        }
+        chunk = null;
+        chunkStart = chunkEnd = 0;
+        nextLine = 0;
+    }
+
+    /**
+     * Decode and resize the next band into pixels (outputWidth x bandHeight,
+     * ARGB)
+     */
+    public void nextBand(int[] pixels) throws IOException {
+        int firstLine = nextLine;
+        int lastLine = firstLine + bandHeight;
+        if (lastLine > targetHeight) {
+            throw new IOException("No more bands, target height is " + targetHeight);
+        }
+        int rowStart = spanStart(firstLine, subHeight, targetHeight);
+        int rowEnd = spanEnd(lastLine - 1, subHeight, targetHeight);
+        if (chunk == null || rowStart < chunkStart || rowEnd > chunkEnd) {
+            loadChunk(firstLine);
+        }
+
+        for (int line = firstLine; line < lastLine; line++) {
+            int y0 = spanStart(line, subHeight, targetHeight) - chunkStart;
+            int y1 = spanEnd(line, subHeight, targetHeight) - chunkStart;
+            int out = (line - firstLine) * outputWidth;
+            for (int x = 0; x < outputWidth; x++) {
+                pixels[out + x] = average(y0, y1, columnStart[x], columnEnd[x]);
+            }
+        }
+        nextLine = lastLine;
+    }
+
+    /**
+     * Read as many whole bands from firstLine on as fit into the pixel budget
+     * (at least one)
+     */
+    private void loadChunk(int firstLine) throws IOException {
+        int rowStart = spanStart(firstLine, subHeight, targetHeight);
+        int lastLine = firstLine + bandHeight;
+        while (lastLine + bandHeight <= targetHeight
+                && (long) subWidth * (spanEnd(lastLine + bandHeight - 1, subHeight, targetHeight) - rowStart)
+                        <= chunkPixels) {
+            lastLine += bandHeight;
+        }
+        int rowEnd = spanEnd(lastLine - 1, subHeight, targetHeight);
+
+        chunk = null; // release the previous chunk before decoding the next one
+        ImageReadParam param = reader.getDefaultReadParam();
+        int sourceTop = rowStart * subsampling;
+        int sourceBottom = Math.min(sourceHeight, rowEnd * subsampling);
+        param.setSourceRegion(new Rectangle(0, sourceTop, sourceWidth, sourceBottom - sourceTop));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage decoded = reader.read(0, param);
+        int rows = Math.min(decoded.getHeight(), rowEnd - rowStart);
+        chunk = decoded.getRGB(0, 0, Math.min(subWidth, decoded.getWidth()), rows, null, 0, subWidth);
+        chunkStart = rowStart;
+        chunkEnd = rowStart + rows;
+    }
+
+    /**
+     * Mean ARGB of the chunk pixels [x0, x1) x [y0, y1)
+     */
+    private int average(int y0, int y1, int x0, int x1) {
+        y1 = Math.min(y1, chunkEnd - chunkStart);
+        if (x1 - x0 == 1 && y1 - y0 == 1) {
+            return chunk[y0 * subWidth + x0];
+        }
+        long a = 0, r = 0, g = 0, b = 0;
+        for (int y = y0; y < y1; y++) {
+            int row = y * subWidth;
+            for (int x = x0; x < x1; x++) {
+                int pixel = chunk[row + x];
+                a += pixel >>> 24;
+                r += (pixel >> 16) & 0xFF;
+                g += (pixel >> 8) & 0xFF;
+                b += pixel & 0xFF;
+            }
+        }
+        long count = (long) (x1 - x0) * (y1 - y0);
+        long half = count / 2;
+        return (int) ((a + half) / count) << 24 | (int) ((r + half) / count) << 16
+                | (int) ((g + half) / count) << 8 | (int) ((b + half) / count);
+    }
+
+    /**
+     * First source index covered by target index i (source length n, target length m)
+     */
+    private static int spanStart(int i, int n, int m) {
+        return (int) ((long) i * n / m);
+    }
+
+    /**
+     * End (exclusive) of the source span of target index i, at least one pixel
+     */
+    private static int spanEnd(int i, int n, int m) {
+        return Math.max(spanStart(i, n, m) + 1, (int) ((long) (i + 1) * n / m));
+    }
+
+    @Override
+    public void close() {
+        reader.dispose();
+        try {
+            input.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+}
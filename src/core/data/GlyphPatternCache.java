@@ -0,0 +1,169 @@
+package core.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import logger.Logger;
+
+/**
+ * Binary on-disk cache for generated glyph patterns.
+ *
+ * Scanning the whole BMP for displayable glyphs takes seconds, so the result
+ * is stored once per font and settings. The cache key is a SHA-256 over the
+ * font file content, the font size, the brightness threshold and the scanned
+ * codepoint range; any change produces a different file and the patterns are
+ * generated again.
+ *
+ * File layout (big endian): magic, format version, 32-byte key, glyph count,
+ * count codepoints (int), count patterns (long). Entries are written in the
+ * iteration order of the generated map and read back in the same order, so
+ * the loaded HashMap iterates exactly like the generated one.
+ */
+public class GlyphPatternCache {
+    private static final int MAGIC = 0x55534347; // "USCG"
+    private static final int FORMAT_VERSION = 1;
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER_SIZE = 4 + 4 + KEY_LENGTH + 4;
+
+    public static File cacheDirectory = new File(System.getProperty("user.home"), ".unscii-generator/cache");
+
+    /**
+     * Compute the cache key for a font file and the generator settings
+     *
+     * @return the key, or null if the font file could not be read
+     */
+    public static byte[] createKey(String fontPath, float fontSize, float threshold, int minCodePoint,
+            int maxCodePoint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Files.readAllBytes(new File(fontPath).toPath()));
+            ByteBuffer settings = ByteBuffer.allocate(4 * 5);
+            settings.putInt(FORMAT_VERSION);
+            settings.putFloat(fontSize);
+            settings.putFloat(threshold);
+            settings.putInt(minCodePoint);
+            settings.putInt(maxCodePoint);
+            digest.update(settings.array());
+            return digest.digest();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Logger.println("Glyph cache disabled, could not hash font: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Load cached patterns for the key
+     *
+     * @return the patterns, or null if there is no valid cache file for the key
+     */
+    public static Map<Integer, Long> load(byte[] key) {
+        if (key == null) {
+            return null;
+        }
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Logger.println("Ignoring invalid glyph cache file: " + file.getAbsolutePath());
+                return null;
+            }
+            byte[] storedKey = new byte[KEY_LENGTH];
+            buffer.get(storedKey);
+            int count = buffer.getInt();
+            if (!Arrays.equals(storedKey, key) || count < 0 || buffer.remaining() != count * 12L) {
+                Logger.println("Ignoring invalid glyph cache file: " + file.getAbsolutePath());
+                return null;
+            }
+
+            int[] codePoints = new int[count];
+            long[] patterns = new long[count];
+            IntBuffer codePointBuffer = buffer.asIntBuffer();
+            codePointBuffer.get(codePoints);
+            buffer.position(buffer.position() + count * 4);
+            LongBuffer patternBuffer = buffer.asLongBuffer();
+            patternBuffer.get(patterns);
+
+            Map<Integer, Long> result = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                result.put(codePoints[i], patterns[i]);
+            }
+            Logger.println("Loaded " + count + " glyph patterns from cache in "
+                    + (System.currentTimeMillis() - startTime) + " ms: " + file.getAbsolutePath());
+            return result;
+        } catch (IOException e) {
+            Logger.println("Could not read glyph cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store patterns for the key. Errors are logged and otherwise ignored, the
+     * cache is only an optimization.
+     */
+    public static void store(byte[] key, Map<Integer, Long> patterns) {
+        if (key == null) {
+            return;
+        }
+        File file = fileFor(key);
+        File tempFile = null;
+        try {
+            if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+                Logger.println("Could not create glyph cache directory: " + cacheDirectory.getAbsolutePath());
+                return;
+            }
+            // write to a temp file first so concurrent runs never see a partial file
+            tempFile = File.createTempFile("glyphs-", ".tmp", cacheDirectory);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(key);
+                out.writeInt(patterns.size());
+                for (Integer codePoint : patterns.keySet()) {
+                    out.writeInt(codePoint);
+                }
+                for (Long pattern : patterns.values()) {
+                    out.writeLong(pattern);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Logger.println("Glyph patterns cached at: " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Logger.println("Could not write glyph cache: " + e.getMessage());
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static File fileFor(byte[] key) {
+        StringBuilder name = new StringBuilder("glyphs-");
+        for (int i = 0; i < 8; i++) {
+            name.append(String.format("%02x", key[i]));
+        }
+        return new File(cacheDirectory, name.append(".bin").toString());
+    }
+}
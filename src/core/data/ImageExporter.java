@@ -1,19 +1,48 @@
 package core.data;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
 import core.ProcessingCore;
 import logger.Logger;
-import processing.core.PGraphics;
 
 public class ImageExporter {
+    // Deflate level of exported PNGs: 0 (fastest) to 9 (smallest), -1 for the zlib default
+    public static int compressionLevel = 6;
+
+    /**
+     * Export the result grid as PNG with scale x scale pixels per glyph pixel.
+     * The image is rendered and compressed one glyph row at a time, memory
+     * stays bounded by one band of GLYPH_HEIGHT * scale lines.
+     */
     public static void exportAsPng(int scale, String outputPath, ProcessingCore core){
-        
-        PGraphics img = core.getResultingImage(10);
-        //confirm pixel dimension of img: 
-        Logger.println("Exporting image with dimensions: " + img.width + "x" + img.height);
-        if(img != null){
-            Logger.println("Calculating image success..");
-        } 
-        img.save(outputPath);
-        Logger.println("Image saved to: " + outputPath);
+        if (core.resultGrid == null) {
+            Logger.println("Nothing to export, no result available.");
+            return;
+        }
+        scale = Math.max(1, scale);
+        int width = core.gridWidth * ProcessingCore.GLYPH_WIDTH * scale;
+        int bandHeight = ProcessingCore.GLYPH_HEIGHT * scale;
+        int height = core.gridHeight * bandHeight;
+        Logger.println("Exporting image with dimensions: " + width + "x" + height);
+
+        long startTime = System.currentTimeMillis();
+        int[] band = new int[width * bandHeight];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath), 1 << 16);
+                PngWriter png = new PngWriter(out, width, height, compressionLevel)) {
+            for (int y = 0; y < core.gridHeight; y++) {
+                Arrays.fill(band, 0);
+                core.drawResultRow(y, scale, band, 0, width);
+                png.writeLines(band, 0, bandHeight);
+            }
+            png.finish();
+        } catch (IOException e) {
+            Logger.println("Error saving image: " + e.getMessage());
+            return;
+        }
+        Logger.println("Image saved to: " + outputPath + " (" + (System.currentTimeMillis() - startTime) + " ms)");
     }
 }
@@ -0,0 +1,135 @@
+package core.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Minimal streaming PNG encoder (8-bit RGBA, no interlacing).
+ *
+ * Scanlines are passed in bands and deflated straight into IDAT chunks of
+ * bounded size, so the whole image never has to exist in memory. Every line
+ * uses the Up filter: the lines of a glyph row repeat scale times and become
+ * all zeros, which deflates to almost nothing even at low levels.
+ */
+public class PngWriter implements AutoCloseable {
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int IDAT_SIZE = 1 << 16;
+    private static final int FILTER_UP = 2;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream compressed;
+    private byte[] line;
+    private byte[] previousLine;
+    private int linesWritten;
+
+    /**
+     * @param compressionLevel 0 (fastest) to 9 (smallest), or -1 for the zlib default
+     */
+    public PngWriter(OutputStream out, int width, int height, int compressionLevel) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.line = new byte[width * 4];
+        this.previousLine = new byte[width * 4];
+        this.deflater = new Deflater(compressionLevel);
+        this.compressed = new DeflaterOutputStream(new IdatStream(), deflater, IDAT_SIZE);
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8); // bit depth
+        headerData.writeByte(6); // colour type RGBA
+        headerData.writeByte(0); // deflate
+        headerData.writeByte(0); // adaptive filtering
+        headerData.writeByte(0); // no interlace
+        writeChunk("IHDR", header.toByteArray(), 0, header.size());
+    }
+
+    /**
+     * Append lineCount ARGB scanlines of the image width, starting at offset
+     */
+    public void writeLines(int[] argb, int offset, int lineCount) throws IOException {
+        if (linesWritten + lineCount > height) {
+            throw new IOException("More lines than the image height " + height);
+        }
+        for (int l = 0; l < lineCount; l++) {
+            int start = offset + l * width;
+            for (int x = 0, b = 0; x < width; x++, b += 4) {
+                int pixel = argb[start + x];
+                line[b] = (byte) (pixel >> 16);
+                line[b + 1] = (byte) (pixel >> 8);
+                line[b + 2] = (byte) pixel;
+                line[b + 3] = (byte) (pixel >>> 24);
+            }
+            compressed.write(FILTER_UP);
+            byte[] filtered = previousLine; // reuse as output, the old line is not needed after this
+            for (int b = 0; b < line.length; b++) {
+                filtered[b] = (byte) (line[b] - previousLine[b]);
+            }
+            compressed.write(filtered);
+            previousLine = line;
+            line = filtered;
+            linesWritten++;
+        }
+    }
+
+    /**
+     * Finish the image data and write the end chunk; the target stream stays open
+     */
+    public void finish() throws IOException {
+        if (linesWritten != height) {
+            throw new IOException("Only " + linesWritten + " of " + height + " lines written");
+        }
+        compressed.finish();
+        compressed.flush();
+        writeChunk("IEND", new byte[0], 0, 0);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Collects deflated bytes and writes them as IDAT chunks
+     */
+    private class IdatStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int chunkLength = Math.min(length, IDAT_SIZE);
+                writeChunk("IDAT", data, offset, chunkLength);
+                offset += chunkLength;
+                length -= chunkLength;
+            }
+        }
+    }
+}
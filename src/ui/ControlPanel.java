@@ -24,6 +24,7 @@ import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -33,6 +34,7 @@ import javax.swing.JSpinner;
 import javax.swing.SwingUtilities;
 
 import core.ColorPalette;
+import core.MultiThreadSolver;
 import core.ProcessingCore;
 import core.ResultGlyph;
 import logger.Logger;
@@ -117,6 +119,15 @@ public class ControlPanel extends JFrame implements ActionListener {
 
     public static AlgoPreference algoPreference = AlgoPreference.None;
     public static double algoDeltaThreshold = 100;
+
+    /**
+     * True if algoDeltaThreshold changes the result: only in the threshold
+     * modes, and not with the OPTIMAL matcher, which has no threshold rule
+     */
+    public static boolean thresholdApplies() {
+        return (algoPreference == AlgoPreference.Threshold_Light || algoPreference == AlgoPreference.Threshold_Dark)
+                && MultiThreadSolver.approxAlgorithm != MultiThreadSolver.ApproxAlgorithm.OPTIMAL;
+    }
     PanelState state = PanelState.SETUP;
 
     private class GlyphPreviewPanel extends JPanel {
@@ -263,8 +274,11 @@ public class ControlPanel extends JFrame implements ActionListener {
         algoDeltaThresholdSpinner.addChangeListener(e -> {
             int value = (int) algoDeltaThresholdSpinner.getValue();
             algoDeltaThreshold = (double) value;
+            if (p != null) {
+                p.applyPreferenceChange();
+            }
         });
-        algoDeltaThresholdSpinner.setEnabled(algoPreference == AlgoPreference.Threshold_Dark || algoPreference == AlgoPreference.Threshold_Light);
+        algoDeltaThresholdSpinner.setEnabled(thresholdApplies());
 
         algoPreferenceSelector.addActionListener(e -> {
             String selected = (String) algoPreferenceSelector.getSelectedItem();
@@ -285,14 +299,30 @@ public class ControlPanel extends JFrame implements ActionListener {
                 } else {
                     usePreference = false;
                 }
-                algoDeltaThresholdSpinner.setEnabled(algoPreference == AlgoPreference.Threshold_Dark ||
-                        algoPreference == AlgoPreference.Threshold_Light);
+                algoDeltaThresholdSpinner.setEnabled(thresholdApplies());
+                if (p != null) {
+                    p.applyPreferenceChange();
+                }
             }
         });
         
+        JCheckBox optimalCheckBox = new JCheckBox("Opt",
+                MultiThreadSolver.approxAlgorithm == MultiThreadSolver.ApproxAlgorithm.OPTIMAL);
+        optimalCheckBox.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        optimalCheckBox.setToolTipText("Best colour pair per glyph instead of the two dominant colours");
+        optimalCheckBox.addActionListener(e -> {
+            MultiThreadSolver.approxAlgorithm = optimalCheckBox.isSelected() ? MultiThreadSolver.ApproxAlgorithm.OPTIMAL
+                    : MultiThreadSolver.ApproxAlgorithm.BITMASK;
+            algoDeltaThresholdSpinner.setEnabled(thresholdApplies());
+            if (p != null) {
+                p.restartConversionIfRunning();
+            }
+        });
+
         algoPanel.add(algoPreferenceSelector);
         algoPanel.add(new JLabel("Th:"));
         algoPanel.add(algoDeltaThresholdSpinner);
+        algoPanel.add(optimalCheckBox);
 
         gbc.gridy = 2;
         toolbarPanel.add(algoPanel, gbc);